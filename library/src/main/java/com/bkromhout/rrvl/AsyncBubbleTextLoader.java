@@ -0,0 +1,107 @@
+package com.bkromhout.rrvl;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.LruCache;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Loads fast scroller bubble text from an {@link AsyncBubbleTextProvider} on a worker thread, caching the results per
+ * position and cancelling requests which are superseded before they've run.
+ */
+final class AsyncBubbleTextLoader {
+    interface Callback {
+        /**
+         * Called on the UI thread once the text for the most recently requested position is available.
+         * @param text Bubble text.
+         */
+        void onBubbleTextLoaded(String text);
+    }
+
+    private static final int CACHE_SIZE = 512;
+    /**
+     * All loaders share one worker thread, which means that providers can keep a Realm instance open on it.
+     */
+    private static final ExecutorService EXECUTOR = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "rrvl-bubble-text");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private final AsyncBubbleTextProvider provider;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final LruCache<Integer, String> cache = new LruCache<>(CACHE_SIZE);
+    private RealmRecyclerViewAdapter adapter;
+    private Future<?> pending = null;
+    /**
+     * Incremented for every request and every invalidation, so that results which arrive late can be recognized.
+     */
+    private volatile int generation = 0;
+
+    AsyncBubbleTextLoader(AsyncBubbleTextProvider provider) {
+        this.provider = provider;
+    }
+
+    void setAdapter(RealmRecyclerViewAdapter adapter) {
+        this.adapter = adapter;
+        invalidate();
+    }
+
+    /**
+     * Drop cached text and any pending request. Should be called whenever the adapter's items change.
+     */
+    void invalidate() {
+        generation++;
+        cache.evictAll();
+        cancelPending();
+    }
+
+    /**
+     * Request the bubble text for {@code position}. If it's cached, {@code callback} is called immediately; otherwise
+     * any earlier request which hasn't finished is cancelled, and {@code callback} will be called once the text has
+     * been loaded (unless this request is itself superseded first).
+     * @param position Position to get bubble text for.
+     * @param callback Callback to deliver the text to.
+     */
+    void load(final int position, final Callback callback) {
+        String cached = cache.get(position);
+        cancelPending();
+        final int requestGeneration = ++generation;
+        if (cached != null) {
+            callback.onBubbleTextLoaded(cached);
+            return;
+        }
+
+        final Object uid = adapter != null ? adapter.loadUIDAt(position) : null;
+        pending = EXECUTOR.submit(new Runnable() {
+            @Override
+            public void run() {
+                if (requestGeneration != generation) return;
+                final String text = provider.getFastScrollBubbleText(position, uid);
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (requestGeneration != generation) return;
+                        pending = null;
+                        String result = text != null ? text : "";
+                        cache.put(position, result);
+                        callback.onBubbleTextLoaded(result);
+                    }
+                });
+            }
+        });
+    }
+
+    private void cancelPending() {
+        if (pending == null) return;
+        pending.cancel(false);
+        pending = null;
+    }
+}
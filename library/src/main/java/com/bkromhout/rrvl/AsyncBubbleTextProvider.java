@@ -0,0 +1,29 @@
+package com.bkromhout.rrvl;
+
+/**
+ * An alternative to {@link BubbleTextProvider} for when figuring out the text for the fast scroller's bubble is too
+ * slow to do while the user is dragging the handle (for example, if it requires looking up a related object).
+ * <p/>
+ * Text is requested on a background worker thread, cached per position, and requests which are superseded by newer
+ * ones as the handle moves are cancelled. The bubble keeps showing the last text it had until the text for the newest
+ * position is ready.
+ * @see RealmRecyclerView#setAsyncBubbleTextProvider(AsyncBubbleTextProvider)
+ */
+public interface AsyncBubbleTextProvider {
+    /**
+     * Get the text which should be shown in the fast scroller's bubble for the item at {@code position}.
+     * <p/>
+     * <b>This is called on a background thread</b>, so it must not touch any Realm objects (including the adapter's
+     * {@code RealmResults}) which belong to the UI thread. Instead, use {@code uid} to look up the item using a Realm
+     * instance opened on the calling thread.
+     * <p/>
+     * The calling thread is always the same one, but it has no {@code Looper}, so a Realm instance kept open on it
+     * never refreshes by itself and would keep returning data from whenever it was opened. Either open (and close) a
+     * Realm instance in each call, or keep one open and call {@code refresh()} on it at the start of each call.
+     * @param position Position of the item to return text for.
+     * @param uid      The {@link UIDModel#getUID() UID} of the item at {@code position}, or null if it isn't an item
+     *                 from the adapter's {@code RealmResults}.
+     * @return Text to show in the fast scroller's bubble.
+     */
+    String getFastScrollBubbleText(int position, Object uid);
+}
@@ -0,0 +1,22 @@
+package com.bkromhout.rrvl;
+
+import io.realm.Realm;
+import io.realm.RealmModel;
+import io.realm.RealmResults;
+
+/**
+ * Creates the {@code RealmResults} for a {@link RealmRecyclerViewAdapter} which is running its query on a background
+ * thread.
+ * @see RealmRecyclerViewAdapter#setBackgroundQuery(io.realm.RealmConfiguration, BackgroundQuery)
+ */
+public interface BackgroundQuery<T extends RealmModel & UIDModel> {
+    /**
+     * Run the query.
+     * <p/>
+     * <b>This is called on a background thread</b>, using a Realm instance which belongs to that thread. It's called
+     * once, after which the results are kept up to date by Realm as usual.
+     * @param realm Realm instance to run the query with.
+     * @return Query results.
+     */
+    RealmResults<T> createResults(Realm realm);
+}
@@ -0,0 +1,118 @@
+package com.bkromhout.rrvl;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Process;
+import difflib.Delta;
+import io.realm.Realm;
+import io.realm.RealmChangeListener;
+import io.realm.RealmConfiguration;
+import io.realm.RealmModel;
+import io.realm.RealmResults;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs a {@link BackgroundQuery} on its own looper thread, and each time its results change, hands a detached copy of
+ * them to the UI thread along with the diff from the previous copy.
+ * <p/>
+ * Realm objects can't be passed between threads, so the copies are made using {@code Realm.copyFromRealm()}. The
+ * copies are unmanaged, so reading them on the UI thread never touches Realm. Since each copy is diffed against the
+ * one before it and they're delivered in order, the diffs always match what the UI thread has.
+ */
+final class BackgroundSnapshotter<T extends RealmModel & UIDModel> {
+    interface Callback<T> {
+        /**
+         * Called on the UI thread with each new snapshot.
+         * @param items  Detached copies of the items.
+         * @param ids    UIDs of the items.
+         * @param deltas Deltas from the previous snapshot's UIDs to {@code ids}, or null if this is the first snapshot.
+         */
+        void onSnapshot(List<T> items, List ids, List<Delta> deltas);
+    }
+
+    private final RealmConfiguration config;
+    private final BackgroundQuery<T> query;
+    private final Callback<T> callback;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final HandlerThread thread;
+    private final Handler handler;
+    // These are only touched on the background thread.
+    private Realm realm;
+    private RealmResults<T> results;
+    private List lastIds = null;
+    private volatile boolean stopped = false;
+
+    private final RealmChangeListener<RealmResults<T>> changeListener = new RealmChangeListener<RealmResults<T>>() {
+        @Override
+        public void onChange(RealmResults<T> newResults) {
+            snapshot();
+        }
+    };
+
+    BackgroundSnapshotter(RealmConfiguration config, BackgroundQuery<T> query, Callback<T> callback) {
+        this.config = config;
+        this.query = query;
+        this.callback = callback;
+        this.thread = new HandlerThread("rrvl-background-query", Process.THREAD_PRIORITY_BACKGROUND);
+        thread.start();
+        this.handler = new Handler(thread.getLooper());
+    }
+
+    void start() {
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                realm = Realm.getInstance(config);
+                results = query.createResults(realm);
+                results.addChangeListener(changeListener);
+                if (results.isLoaded()) snapshot();
+            }
+        });
+    }
+
+    /**
+     * Stop listening for changes, close the background Realm instance, and quit the thread. Snapshots which are still
+     * on their way to the UI thread are dropped.
+     */
+    void stop() {
+        stopped = true;
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (results != null) results.removeChangeListener(changeListener);
+                if (realm != null) realm.close();
+                results = null;
+                realm = null;
+            }
+        });
+        thread.quitSafely();
+    }
+
+    private void snapshot() {
+        if (stopped || !results.isValid()) return;
+        final List<T> items;
+        final List ids;
+        Tracing.begin(Tracing.SNAPSHOT);
+        try {
+            items = realm.copyFromRealm(results);
+            ids = new ArrayList(items.size());
+            for (T item : items)
+                //noinspection unchecked
+                ids.add(item.getUID());
+        } finally {
+            Tracing.end();
+        }
+        final List<Delta> deltas = lastIds != null ? RealmRecyclerViewAdapter.diffIds(lastIds, ids) : null;
+        lastIds = ids;
+
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (!stopped) callback.onSnapshot(items, ids, deltas);
+            }
+        });
+    }
+}
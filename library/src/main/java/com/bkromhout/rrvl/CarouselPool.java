@@ -0,0 +1,118 @@
+package com.bkromhout.rrvl;
+
+import android.util.LruCache;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+import io.realm.RealmModel;
+import io.realm.RealmResults;
+
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Helps with putting horizontal {@link RealmRecyclerView}s ("carousels") in the rows of a vertical one.
+ * <p/>
+ * Create one of these for the outer {@link RealmRecyclerView}, then call {@link #bind(RealmRecyclerView,
+ * RealmRecyclerViewAdapter, Object, RealmResults)} from the outer adapter's {@code onBindViewHolder()} and {@link
+ * #recycle(RealmRecyclerView)} from its {@code onViewRecycled()}. Each carousel's adapter should belong to the row's
+ * view holder, so that it gets reused along with the carousel.
+ * <p/>
+ * All carousels share one {@code RecycledViewPool}, so scrolling new rows into view doesn't mean inflating new views
+ * for each of their carousels. Carousels stop listening for changes when they're recycled, so listeners don't pile up,
+ * and carousels which are bound while the outer list is scrolling don't start listening (or snapshot their results)
+ * until it stops. The last snapshot of each carousel's results is also cached by the UID of the outer item, so
+ * rebinding that item later doesn't mean snapshotting its carousel's results again.
+ */
+public final class CarouselPool {
+    private final RecyclerView.RecycledViewPool viewPool = new RecyclerView.RecycledViewPool();
+    private final LruCache<Object, List> snapshots;
+    /**
+     * The outer UIDs which currently bound carousel adapters are bound for.
+     */
+    private final HashMap<RealmRecyclerViewAdapter, Object> boundParents = new HashMap<>();
+    private final RecyclerView parentRecyclerView;
+
+    private final RecyclerView.OnScrollListener parentScrollListener = new RecyclerView.OnScrollListener() {
+        @Override
+        public void onScrollStateChanged(RecyclerView recyclerView, int newState) {
+            if (newState != RecyclerView.SCROLL_STATE_IDLE) return;
+            for (RealmRecyclerViewAdapter adapter : boundParents.keySet()) adapter.resumeDeferredListening();
+        }
+    };
+
+    /**
+     * Create a new {@link CarouselPool}.
+     * @param parent             The outer {@link RealmRecyclerView}, whose rows contain carousels.
+     * @param maxCachedSnapshots The maximum number of carousel snapshots to cache.
+     */
+    public CarouselPool(RealmRecyclerView parent, int maxCachedSnapshots) {
+        this.parentRecyclerView = parent.getRecyclerView();
+        this.snapshots = new LruCache<>(Math.max(1, maxCachedSnapshots));
+        parentRecyclerView.addOnScrollListener(parentScrollListener);
+    }
+
+    /**
+     * Get the {@code RecycledViewPool} which is shared by all of the carousels. Use this to set the maximum number of
+     * recycled views of each type if the default of 5 is too few for the number of carousels shown at once.
+     * @return Shared view pool.
+     */
+    @SuppressWarnings("unused")
+    public RecyclerView.RecycledViewPool getRecycledViewPool() {
+        return viewPool;
+    }
+
+    /**
+     * Bind {@code carousel} to show {@code results}. Call this from the outer adapter's {@code onBindViewHolder()}.
+     * <p/>
+     * The first time a carousel is bound, it's set up to be horizontal and use the shared view pool, and fast scrolling
+     * is disabled for it.
+     * @param carousel  Carousel to bind.
+     * @param adapter   The carousel's adapter.
+     * @param parentUid UID of the outer item whose row contains {@code carousel}.
+     * @param results   Results to show in the carousel.
+     */
+    public <T extends RealmModel & UIDModel> void bind(RealmRecyclerView carousel,
+                                                       RealmRecyclerViewAdapter<T, ?> adapter, Object parentUid,
+                                                       RealmResults<T> results) {
+        RecyclerView carouselRecyclerView = carousel.getRecyclerView();
+        if (carouselRecyclerView.getRecycledViewPool() != viewPool) {
+            LinearLayoutManager lm = carousel.getLayoutManager();
+            if (lm != null) {
+                lm.setOrientation(LinearLayoutManager.HORIZONTAL);
+                // Give the views back to the shared pool when the carousel is detached.
+                lm.setRecycleChildrenOnDetach(true);
+            }
+            carousel.setFastScroll(false);
+            carouselRecyclerView.setRecycledViewPool(viewPool);
+        }
+        if (carouselRecyclerView.getAdapter() != adapter) carousel.setAdapter(adapter);
+
+        boundParents.put(adapter, parentUid);
+        boolean parentScrolling = parentRecyclerView.getScrollState() != RecyclerView.SCROLL_STATE_IDLE;
+        adapter.bindNested(results, parentUid != null ? snapshots.get(parentUid) : null, parentScrolling);
+    }
+
+    /**
+     * Unbind {@code carousel}, caching its snapshot. Call this from the outer adapter's {@code onViewRecycled()}.
+     * @param carousel Carousel to unbind.
+     */
+    public void recycle(RealmRecyclerView carousel) {
+        RecyclerView.Adapter adapter = carousel.getRecyclerView().getAdapter();
+        if (!(adapter instanceof RealmRecyclerViewAdapter)) return;
+
+        Object parentUid = boundParents.remove(adapter);
+        List snapshot = ((RealmRecyclerViewAdapter) adapter).unbindNested();
+        if (parentUid != null && snapshot != null) snapshots.put(parentUid, snapshot);
+    }
+
+    /**
+     * Stop watching the outer {@link RealmRecyclerView} and drop all cached snapshots. Carousels which are still bound
+     * should be recycled first.
+     */
+    @SuppressWarnings("unused")
+    public void release() {
+        parentRecyclerView.removeOnScrollListener(parentScrollListener);
+        snapshots.evictAll();
+        viewPool.clear();
+    }
+}
@@ -0,0 +1,299 @@
+package com.bkromhout.rrvl;
+
+import android.content.Context;
+import androidx.recyclerview.widget.RecyclerView;
+import difflib.Delta;
+import io.realm.RealmChangeListener;
+import io.realm.RealmModel;
+import io.realm.RealmResults;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A {@link RealmRecyclerViewAdapter} which shows several {@code RealmResults} ("segments") one after another, as if
+ * they were one list.
+ * <p/>
+ * Each segment has its own change listener and UID snapshot, so a change to one segment only diffs that segment; its
+ * notifications are then shifted by the number of items in the segments before it. Selection, drag and drop, fast
+ * scrolling, and header and footer rows work the same as they do for a single {@code RealmResults}, using adapter
+ * positions; use {@link #getSegmentOf(int)} and {@link #getPositionInSegment(int)} if you need to know which segment a
+ * position is in.
+ * <p/>
+ * Don't use {@link #updateRealmResults(RealmResults)} or {@link #realmResults} with this adapter; use {@link
+ * #setSegmentResults(int, RealmResults)} and {@link #getItem(int)} instead. Windowed, shared, background, and nested
+ * snapshots, and expected mutations, aren't supported.
+ */
+public abstract class ConcatRealmRecyclerViewAdapter<T extends RealmModel & UIDModel,
+        VH extends RecyclerView.ViewHolder> extends RealmRecyclerViewAdapter<T, VH> {
+    private final ArrayList<Segment> segments = new ArrayList<>();
+
+    /**
+     * Create a new {@link ConcatRealmRecyclerViewAdapter}.
+     * @param context  Context.
+     * @param segments Results to show, in order. Any of them may be null, in which case that segment is empty until
+     *                 {@link #setSegmentResults(int, RealmResults)} is called for it.
+     */
+    public ConcatRealmRecyclerViewAdapter(Context context, List<RealmResults<T>> segments) {
+        super(context, null);
+        if (segments == null) throw new IllegalArgumentException("Segments cannot be null");
+        for (RealmResults<T> results : segments) this.segments.add(new Segment(results));
+        notifyAllChanged();
+    }
+
+    /**
+     * Get the number of segments.
+     * @return Number of segments.
+     */
+    @SuppressWarnings("unused")
+    public final int getSegmentCount() {
+        return segments.size();
+    }
+
+    /**
+     * Get the results shown by a segment.
+     * @param segment Index of the segment.
+     * @return Results shown by the segment, or null if it's empty because it doesn't have any.
+     */
+    @SuppressWarnings("unused")
+    public final RealmResults<T> getSegmentResults(int segment) {
+        return segments.get(segment).results;
+    }
+
+    /**
+     * Replace the results shown by a segment. Only the items in that segment are diffed and notified.
+     * @param segment Index of the segment.
+     * @param results New results to show in the segment, or null to make it empty.
+     */
+    @SuppressWarnings("unused")
+    public final void setSegmentResults(int segment, RealmResults<T> results) {
+        Segment s = segments.get(segment);
+        s.stopListening();
+        s.results = results;
+        s.startListening();
+        s.missedUpdate = false;
+        clearSelections();
+        s.update();
+    }
+
+    /**
+     * Get the index of the segment which the item at {@code position} belongs to.
+     * @param position Adapter position.
+     * @return Index of the segment, or -1 if {@code position} is a header or footer row.
+     */
+    @SuppressWarnings("unused")
+    public final int getSegmentOf(int position) {
+        int dataPosition = getDataPosition(position);
+        if (dataPosition == -1) return -1;
+        for (int i = 0; i < segments.size(); i++) {
+            int size = segments.get(i).size();
+            if (dataPosition < size) return i;
+            dataPosition -= size;
+        }
+        return -1;
+    }
+
+    /**
+     * Get the position within its segment of the item at {@code position}.
+     * @param position Adapter position.
+     * @return Position in the segment's results, or -1 if {@code position} is a header or footer row.
+     */
+    @SuppressWarnings("unused")
+    public final int getPositionInSegment(int position) {
+        int dataPosition = getDataPosition(position);
+        if (dataPosition == -1) return -1;
+        for (Segment segment : segments) {
+            int size = segment.size();
+            if (dataPosition < size) return dataPosition;
+            dataPosition -= size;
+        }
+        return -1;
+    }
+
+    /**
+     * Get the adapter position of the first item in a segment.
+     * @param segment Index of the segment.
+     * @return Adapter position where the segment starts. If the segment is empty, this is where its first item would
+     * be.
+     */
+    @SuppressWarnings("unused")
+    public final int getSegmentStart(int segment) {
+        int start = getHeaderOffset();
+        for (int i = 0; i < segment; i++) start += segments.get(i).size();
+        return start;
+    }
+
+    /**
+     * Only {@code null} may be passed, which is what {@link #close()} does; it stops all of the segments from listening
+     * for changes. Use {@link #setSegmentResults(int, RealmResults)} to change what's shown.
+     * @param queryResults Must be null.
+     */
+    @Override
+    public void updateRealmResults(RealmResults<T> queryResults) {
+        if (queryResults != null)
+            throw new IllegalArgumentException("Use setSegmentResults() with a ConcatRealmRecyclerViewAdapter.");
+        // This is called from the super constructor before our segments exist.
+        if (segments != null) {
+            for (Segment segment : segments) {
+                segment.stopListening();
+                segment.results = null;
+                segment.uids = new ArrayList(0);
+            }
+        }
+        super.updateRealmResults(null);
+    }
+
+    /**
+     * The same item may be in more than one segment (an item which is both pinned and due today, for example), and
+     * RecyclerView can't handle duplicate stable IDs, so the index of the item's segment is mixed into its ID.
+     * @param position Adapter position.
+     * @return Stable ID.
+     */
+    @Override
+    public long getItemId(int position) {
+        long id = super.getItemId(position);
+        int dataPosition = getDataPosition(position);
+        if (id == RecyclerView.NO_ID || dataPosition == -1) return id;
+
+        // Use the snapshots, which is also where the UIDs come from.
+        for (int i = 0; i < segments.size(); i++) {
+            int size = segments.get(i).uids.size();
+            if (dataPosition < size) return mixStableId(id, i);
+            dataPosition -= size;
+        }
+        return id;
+    }
+
+    @Override
+    int countItems() {
+        int count = 0;
+        for (Segment segment : segments) count += segment.count();
+        return count;
+    }
+
+    @Override
+    T getItemAt(int dataPosition) {
+        for (Segment segment : segments) {
+            int count = segment.count();
+            if (dataPosition < count) return dataPosition < segment.size() ? segment.results.get(dataPosition) : null;
+            dataPosition -= count;
+        }
+        throw new IndexOutOfBoundsException("No item at " + dataPosition);
+    }
+
+    @Override
+    Object getSnapshotUIDAt(int dataPosition) {
+        if (dataPosition < 0) return null;
+        for (Segment segment : segments) {
+            int size = segment.uids.size();
+            if (dataPosition < size) return segment.uids.get(dataPosition);
+            dataPosition -= size;
+        }
+        return null;
+    }
+
+    @Override
+    void onMissedUpdateResumed() {
+        for (Segment segment : segments) {
+            if (!segment.missedUpdate) continue;
+            segment.missedUpdate = false;
+            segment.update();
+        }
+    }
+
+    /**
+     * Get the number of items which the adapter has been told about in the segments before {@code segment}. This uses
+     * the segments' snapshots rather than their results, because the results of earlier segments may have already
+     * changed without our having been notified yet.
+     */
+    private int getSnapshotOffset(Segment segment) {
+        int offset = 0;
+        for (Segment s : segments) {
+            if (s == segment) break;
+            offset += s.uids.size();
+        }
+        return offset;
+    }
+
+    /**
+     * One of the results which we show, along with its own change listener and UID snapshot.
+     */
+    private final class Segment {
+        private RealmResults<T> results;
+        private List uids = new ArrayList(0);
+        private boolean missedUpdate = false;
+
+        private final RealmChangeListener<RealmResults<T>> changeListener =
+                new RealmChangeListener<RealmResults<T>>() {
+                    @Override
+                    public void onChange(RealmResults<T> newResults) {
+                        if (isUpdatePaused()) {
+                            missedUpdate = true;
+                            noteMissedUpdate();
+                            return;
+                        }
+                        clearSelections();
+                        clearExpectedMutations();
+                        update();
+                    }
+                };
+
+        private Segment(RealmResults<T> results) {
+            this.results = results;
+            startListening();
+            uids = getUIDs();
+        }
+
+        private int size() {
+            return results != null && results.isValid() ? results.size() : 0;
+        }
+
+        /**
+         * Get the number of items which we report for this segment. While we've missed an update (because updates are
+         * paused), the RecyclerView hasn't been told about the change yet, so that's the size of our snapshot.
+         */
+        private int count() {
+            return missedUpdate ? uids.size() : size();
+        }
+
+        private void startListening() {
+            if (results != null) results.addChangeListener(changeListener);
+        }
+
+        private void stopListening() {
+            if (results != null) results.removeChangeListener(changeListener);
+        }
+
+        private List getUIDs() {
+            int size = size();
+            Tracing.begin(Tracing.SNAPSHOT);
+            try {
+                List newIds = new ArrayList(size);
+                for (int i = 0; i < size; i++)
+                    //noinspection unchecked
+                    newIds.add(results.get(i).getUID());
+                Tracing.counter(Tracing.LIST_SIZE_COUNTER, size);
+                return newIds;
+            } finally {
+                Tracing.end();
+            }
+        }
+
+        /**
+         * Diff this segment's snapshot against its results, then notify for the changes, shifted by this segment's
+         * offset.
+         */
+        private void update() {
+            UpdateMetricsRecorder metrics = getUpdateMetricsRecorder();
+            if (metrics != null) metrics.begin();
+            List newIds = getUIDs();
+            if (metrics != null) metrics.snapshotTaken();
+            List<Delta> deltas = diffIds(uids, newIds);
+            if (metrics != null) metrics.diffed();
+            int offset = getSnapshotOffset(this);
+            uids = newIds;
+            dispatchDeltas(deltas, offset);
+            invalidateRowModels();
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.bkromhout.rrvl;
+
+import androidx.recyclerview.widget.RecyclerView;
+
+/**
+ * Common interface for the things which can draw and drive a fast scroller for a {@link RealmRecyclerView}: the
+ * view-based {@link FastScroller}, and the canvas-drawn {@link FastScrollerDecoration}.
+ */
+interface FastScrollRenderer {
+    /**
+     * Attach to {@code recyclerView}, or detach from the current RecyclerView if null.
+     * @param recyclerView RecyclerView to attach to.
+     */
+    void setRecyclerView(RecyclerView recyclerView);
+
+    /**
+     * Show or hide the fast scroller entirely (as opposed to auto-hiding the handle).
+     * @param shown Whether the fast scroller should be shown.
+     */
+    void setShown(boolean shown);
+
+    boolean getAutoHideHandle();
+
+    void setAutoHideHandle(boolean autoHideHandle);
+
+    int getAutoHideDelay();
+
+    void setAutoHideDelay(int autoHideDelay);
+
+    boolean getUseBubble();
+
+    void setUseBubble(boolean useBubble);
+
+    void setBubbleTextProvider(BubbleTextProvider bubbleTextProvider);
+
+    /**
+     * Set the loader to use to get bubble text asynchronously. If non-null, this is used instead of the {@link
+     * BubbleTextProvider}.
+     * @param bubbleTextLoader Async bubble text loader.
+     */
+    void setBubbleTextLoader(AsyncBubbleTextLoader bubbleTextLoader);
+
+    void setHandleStateListener(FastScrollHandleStateListener handleStateListener);
+
+    void setDragStateListener(FastScrollHandleStateListener dragStateListener);
+
+    void setRowHeightIndex(RowHeightIndex rowHeightIndex);
+}
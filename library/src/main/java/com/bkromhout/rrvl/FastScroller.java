@@ -13,13 +13,12 @@ import android.widget.LinearLayout;
 import android.widget.TextView;
 import androidx.annotation.NonNull;
 import androidx.core.view.ViewCompat;
-import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
 /**
  * Implementation of a fast scroller for our RecyclerView.
  */
-class FastScroller extends LinearLayout {
+class FastScroller extends LinearLayout implements FastScrollRenderer {
     private static final int BUBBLE_ANIMATION_DURATION = 100;
     private static final int HANDLE_ANIMATION_DURATION = 100;
     static final int DEFAULT_HANDLE_HIDE_DELAY = 2000;
@@ -38,7 +37,10 @@ class FastScroller extends LinearLayout {
     private int autoHideDelay = DEFAULT_HANDLE_HIDE_DELAY;
     private boolean useBubble = false;
     private BubbleTextProvider bubbleTextProvider = null;
+    private AsyncBubbleTextLoader bubbleTextLoader = null;
     private FastScrollHandleStateListener handleStateListener = null;
+    private FastScrollHandleStateListener dragStateListener = null;
+    private RowHeightIndex rowHeightIndex = null;
     private boolean eatVisibilityUpdates = false;
 
     /**
@@ -65,6 +67,16 @@ class FastScroller extends LinearLayout {
         }
     };
 
+    /**
+     * Puts asynchronously loaded text into the bubble.
+     */
+    private final AsyncBubbleTextLoader.Callback bubbleTextCallback = new AsyncBubbleTextLoader.Callback() {
+        @Override
+        public void onBubbleTextLoaded(String text) {
+            bubble.setText(text);
+        }
+    };
+
     public FastScroller(Context context) {
         this(context, null, 0);
     }
@@ -82,7 +94,8 @@ class FastScroller extends LinearLayout {
         handle = findViewById(R.id.fast_scroller_handle);
     }
 
-    void setRecyclerView(final RecyclerView recyclerView) {
+    @Override
+    public void setRecyclerView(final RecyclerView recyclerView) {
         if (this.recyclerView != recyclerView) {
             if (this.recyclerView != null) this.recyclerView.removeOnScrollListener(onScrollListener);
 
@@ -108,7 +121,8 @@ class FastScroller extends LinearLayout {
             });
     }
 
-    boolean getAutoHideHandle() {
+    @Override
+    public boolean getAutoHideHandle() {
         return autoHideHandle;
     }
 
@@ -117,7 +131,8 @@ class FastScroller extends LinearLayout {
      * scrolled for a certain amount of time. False by default.
      * @param autoHideHandle Whether to automatically hide the handle (true), or to keep it visible (false).
      */
-    void setAutoHideHandle(boolean autoHideHandle) {
+    @Override
+    public void setAutoHideHandle(boolean autoHideHandle) {
         if (this.autoHideHandle && !autoHideHandle) {
             // Changing auto-hide from on to off.
             showHandle();
@@ -128,7 +143,8 @@ class FastScroller extends LinearLayout {
         this.autoHideHandle = autoHideHandle;
     }
 
-    int getAutoHideDelay() {
+    @Override
+    public int getAutoHideDelay() {
         return autoHideDelay;
     }
 
@@ -137,12 +153,14 @@ class FastScroller extends LinearLayout {
      * @param autoHideDelay Time in milliseconds to delay before auto-hiding the handle. If < 0, the default will be
      *                      used.
      */
-    void setAutoHideDelay(int autoHideDelay) {
+    @Override
+    public void setAutoHideDelay(int autoHideDelay) {
         if (autoHideDelay < 0) this.autoHideDelay = DEFAULT_HANDLE_HIDE_DELAY;
         else this.autoHideDelay = autoHideDelay;
     }
 
-    boolean getUseBubble() {
+    @Override
+    public boolean getUseBubble() {
         return useBubble;
     }
 
@@ -150,7 +168,8 @@ class FastScroller extends LinearLayout {
      * Whether or not to use the bubble. False by default.
      * @param useBubble Whether or not to use the bubble.
      */
-    void setUseBubble(boolean useBubble) {
+    @Override
+    public void setUseBubble(boolean useBubble) {
         if (this.useBubble && !useBubble) hideBubble();
         this.useBubble = useBubble;
     }
@@ -159,18 +178,51 @@ class FastScroller extends LinearLayout {
      * Set the {@link BubbleTextProvider} to use.
      * @param bubbleTextProvider Bubble text provider.
      */
-    void setBubbleTextProvider(BubbleTextProvider bubbleTextProvider) {
+    @Override
+    public void setBubbleTextProvider(BubbleTextProvider bubbleTextProvider) {
         this.bubbleTextProvider = bubbleTextProvider;
     }
 
+    @Override
+    public void setBubbleTextLoader(AsyncBubbleTextLoader bubbleTextLoader) {
+        this.bubbleTextLoader = bubbleTextLoader;
+    }
+
     /**
      * Set the {@link FastScrollHandleStateListener} to use.
      * @param handleStateListener Handle state listener.
      */
-    void setHandleStateListener(FastScrollHandleStateListener handleStateListener) {
+    @Override
+    public void setHandleStateListener(FastScrollHandleStateListener handleStateListener) {
         this.handleStateListener = handleStateListener;
     }
 
+    /**
+     * Set the {@link FastScrollHandleStateListener} which the library itself uses to track whether the handle is being
+     * dragged. Unlike the one set using {@link #setHandleStateListener(FastScrollHandleStateListener)}, this will only
+     * be notified of {@link FastScrollerHandleState#PRESSED} and {@link FastScrollerHandleState#RELEASED}.
+     * @param dragStateListener Drag state listener.
+     */
+    @Override
+    public void setDragStateListener(FastScrollHandleStateListener dragStateListener) {
+        this.dragStateListener = dragStateListener;
+    }
+
+    /**
+     * Set the {@link RowHeightIndex} to use to map the handle's position to an item position. If null, we assume that
+     * all items are the same height.
+     * @param rowHeightIndex Row height index.
+     */
+    @Override
+    public void setRowHeightIndex(RowHeightIndex rowHeightIndex) {
+        this.rowHeightIndex = rowHeightIndex;
+    }
+
+    @Override
+    public void setShown(boolean shown) {
+        setVisibility(shown ? VISIBLE : GONE);
+    }
+
     @Override
     protected void onSizeChanged(int w, int h, int oldw, int oldh) {
         super.onSizeChanged(w, h, oldw, oldh);
@@ -225,24 +277,62 @@ class FastScroller extends LinearLayout {
 
     private void setRecyclerViewPosition(float y) {
         if (recyclerView != null) {
-            int itemCount = recyclerView.getAdapter().getItemCount();
             float rawTargetItemProportion;
 
             if (handle.getY() == 0) rawTargetItemProportion = 0f;
             else if (handle.getY() + handle.getHeight() > height) rawTargetItemProportion = 1f;
             else rawTargetItemProportion = y / ((float) height - (float) handle.getHeight());
 
-            float targetItemProportion = rawTargetItemProportion * computeMaxScrollProportion(
-                    recyclerView.computeVerticalScrollRange(), recyclerView.computeVerticalScrollExtent());
-
-            int targetPos = (int) getValueInRange(0, itemCount - 1, targetItemProportion * (float) itemCount);
-            ((LinearLayoutManager) recyclerView.getLayoutManager()).scrollToPositionWithOffset(targetPos, 0);
+            int targetPos = scrollRecyclerViewTo(recyclerView, rowHeightIndex, rawTargetItemProportion);
 
             if (useBubble) {
-                if (bubbleTextProvider == null)
+                if (bubbleTextLoader != null) bubbleTextLoader.load(targetPos, bubbleTextCallback);
+                else if (bubbleTextProvider == null)
                     throw new IllegalStateException("You haven't set a BubbleTextProvider.");
-                bubble.setText(bubbleTextProvider.getFastScrollBubbleText(targetPos));
+                else bubble.setText(bubbleTextProvider.getFastScrollBubbleText(targetPos));
+            }
+        }
+    }
+
+    /**
+     * Scroll {@code recyclerView} so that it's at {@code rawTargetItemProportion} of the way through its items.
+     * @param recyclerView            RecyclerView to scroll.
+     * @param rowHeightIndex          Row height index to use to find the target position, or null to assume all rows
+     *                                are the same height.
+     * @param rawTargetItemProportion Proportion of the way through the list to scroll to, from 0 to 1.
+     * @return The position which was scrolled to.
+     */
+    static int scrollRecyclerViewTo(RecyclerView recyclerView, RowHeightIndex rowHeightIndex,
+                                    float rawTargetItemProportion) {
+        Tracing.begin(Tracing.FAST_SCROLL);
+        try {
+            int itemCount = recyclerView.getAdapter().getItemCount();
+            int scrollRange = recyclerView.computeVerticalScrollRange();
+            int scrollExtent = recyclerView.computeVerticalScrollExtent();
+            RecyclerView.LayoutManager layoutManager = recyclerView.getLayoutManager();
+            int targetPos;
+
+            if (rowHeightIndex != null && rowHeightIndex.isReady()) {
+                // We know how tall the rows are, so find the row which will be at the top at the target scroll
+                // offset, and scroll such that it's offset by however much of it should be above the top.
+                long targetOffset = (long) (rawTargetItemProportion
+                        * computeMaxScrollOffset(scrollRange, scrollExtent));
+                targetPos = rowHeightIndex.getPositionAt(targetOffset);
+                LayoutManagers.scrollToPositionWithOffset(layoutManager, targetPos,
+                        (int) (rowHeightIndex.getOffsetOf(targetPos) - targetOffset));
+            } else {
+                float targetItemProportion = rawTargetItemProportion * computeMaxScrollProportion(scrollRange,
+                        scrollExtent);
+
+                // Map to a row rather than an item, so that grids scroll at the same rate as the handle moves.
+                int rowCount = LayoutManagers.getRowCount(layoutManager, itemCount);
+                int targetRow = (int) getValueInRange(0, rowCount - 1, targetItemProportion * (float) rowCount);
+                targetPos = LayoutManagers.getFirstPositionInRow(layoutManager, targetRow, itemCount);
+                LayoutManagers.scrollToPositionWithOffset(layoutManager, targetPos, 0);
             }
+            return targetPos;
+        } finally {
+            Tracing.end();
         }
     }
 
@@ -268,7 +358,7 @@ class FastScroller extends LinearLayout {
      * @return {@code value} if {@code min <= value <= max}, {@code min} if {@code value < min}, or {@code max} if
      * {@code value > max}.
      */
-    private float getValueInRange(float min, float max, float value) {
+    static float getValueInRange(float min, float max, float value) {
         float minimum = Math.max(min, value);
         return Math.min(minimum, max);
     }
@@ -280,7 +370,7 @@ class FastScroller extends LinearLayout {
      * @param scrollExtent Scroll extent.
      * @return Maximum scroll offset.
      */
-    private int computeMaxScrollOffset(int scrollRange, int scrollExtent) {
+    static int computeMaxScrollOffset(int scrollRange, int scrollExtent) {
         return scrollRange - scrollExtent;
     }
 
@@ -291,7 +381,7 @@ class FastScroller extends LinearLayout {
      * @param scrollExtent Scroll extent.
      * @return Maximum scroll proportion.
      */
-    private float computeMaxScrollProportion(int scrollRange, int scrollExtent) {
+    static float computeMaxScrollProportion(int scrollRange, int scrollExtent) {
         return (float) computeMaxScrollOffset(scrollRange, scrollExtent) / (float) scrollRange;
     }
 
@@ -303,7 +393,7 @@ class FastScroller extends LinearLayout {
      * @param scrollExtent Scroll extent.
      * @return Scroll proportion, relative to the maximum scroll offset.
      */
-    private float computeScrollProportionRelativeToMax(int scrollOffset, int scrollRange, int scrollExtent) {
+    static float computeScrollProportionRelativeToMax(int scrollOffset, int scrollRange, int scrollExtent) {
         return (float) scrollOffset / (float) computeMaxScrollOffset(scrollRange, scrollExtent);
     }
 
@@ -494,6 +584,8 @@ class FastScroller extends LinearLayout {
      * @param state State to notify the handle listener of.
      */
     private void notifyHandleListener(FastScrollerHandleState state) {
+        if (dragStateListener != null && (state == FastScrollerHandleState.PRESSED ||
+                state == FastScrollerHandleState.RELEASED)) dragStateListener.onHandleStateChanged(state);
         // The event will be sent if we have a listener, and if it's either not a visibility event or we aren't eating
         // the visibility events (and thus we don't care what it is).
         if (handleStateListener != null && (!eatVisibilityUpdates || state == FastScrollerHandleState.PRESSED ||
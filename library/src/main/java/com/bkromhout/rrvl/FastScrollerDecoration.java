@@ -0,0 +1,439 @@
+package com.bkromhout.rrvl;
+
+import android.animation.Animator;
+import android.animation.AnimatorListenerAdapter;
+import android.animation.ValueAnimator;
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.drawable.Drawable;
+import android.view.MotionEvent;
+import android.view.View;
+import androidx.core.content.ContextCompat;
+import androidx.recyclerview.widget.RecyclerView;
+
+/**
+ * Implementation of a fast scroller which draws its handle and bubble directly onto the RecyclerView's canvas rather
+ * than using views. Looks and behaves the same as {@link FastScroller}, but scrolling doesn't cause any view properties
+ * to change, and showing or hiding the handle and bubble reuses the same animators rather than allocating new ones.
+ * <p/>
+ * Uses the same drawable, color, and dimension resources as {@link FastScroller}, so customizations apply to both.
+ */
+class FastScrollerDecoration extends RecyclerView.ItemDecoration implements FastScrollRenderer,
+        RecyclerView.OnItemTouchListener {
+    private static final int BUBBLE_ANIMATION_DURATION = 100;
+    private static final int HANDLE_ANIMATION_DURATION = 100;
+    private static final int[] STATE_SELECTED = new int[] {android.R.attr.state_selected};
+    private static final int[] STATE_DEFAULT = new int[0];
+
+    private final Drawable handleDrawable;
+    private final Drawable bubbleDrawable;
+    private final Paint bubbleTextPaint;
+    private final int handleWidth;
+    private final int handleHeight;
+    private final int handlePaddingStart;
+    private final int handleMarginEnd;
+    private final int bubbleWidth;
+    private final int bubbleHeight;
+
+    private final ValueAnimator handleAnimator;
+    private final ValueAnimator bubbleAnimator;
+    private float handleAlpha = 1f;
+    private float bubbleAlpha = 0f;
+    /**
+     * Whether the handle is visible at all (including while animating).
+     */
+    private boolean handleVisible = true;
+    /**
+     * Whether the handle is visible or animating towards being visible.
+     */
+    private boolean handleShowing = true;
+    private boolean bubbleShowing = false;
+
+    private RecyclerView recyclerView;
+    private boolean shown = false;
+    private boolean dragging = false;
+    private float touchY = 0f;
+    private String bubbleText = "";
+
+    private boolean autoHideHandle = false;
+    private int autoHideDelay = FastScroller.DEFAULT_HANDLE_HIDE_DELAY;
+    private boolean useBubble = false;
+    private BubbleTextProvider bubbleTextProvider = null;
+    private AsyncBubbleTextLoader bubbleTextLoader = null;
+    private FastScrollHandleStateListener handleStateListener = null;
+    private FastScrollHandleStateListener dragStateListener = null;
+    private RowHeightIndex rowHeightIndex = null;
+
+    /**
+     * RecyclerView.OnScrollListener to show and hide the handle when scrolling starts and stops. We don't need to do
+     * anything when the RecyclerView scrolls, since it will redraw (and thus call {@link #onDrawOver(Canvas,
+     * RecyclerView, RecyclerView.State)}) anyway.
+     */
+    private final RecyclerView.OnScrollListener onScrollListener = new RecyclerView.OnScrollListener() {
+        @Override
+        public void onScrollStateChanged(RecyclerView recyclerView, int newState) {
+            super.onScrollStateChanged(recyclerView, newState);
+            if (!autoHideHandle || dragging) return;
+            if (newState == RecyclerView.SCROLL_STATE_IDLE) hideHandle();
+            else showHandle();
+        }
+    };
+
+    /**
+     * Puts asynchronously loaded text into the bubble.
+     */
+    private final AsyncBubbleTextLoader.Callback bubbleTextCallback = new AsyncBubbleTextLoader.Callback() {
+        @Override
+        public void onBubbleTextLoaded(String text) {
+            setBubbleText(text);
+        }
+    };
+
+    FastScrollerDecoration(Context context) {
+        handleDrawable = ContextCompat.getDrawable(context, R.drawable.fast_scroller_handle).mutate();
+        bubbleDrawable = ContextCompat.getDrawable(context, R.drawable.fast_scroller_bubble).mutate();
+        handleWidth = handleDrawable.getIntrinsicWidth();
+        handleHeight = handleDrawable.getIntrinsicHeight();
+        bubbleWidth = bubbleDrawable.getIntrinsicWidth();
+        bubbleHeight = bubbleDrawable.getIntrinsicHeight();
+        handlePaddingStart = context.getResources().getDimensionPixelSize(R.dimen.rrvl_handle_padding_start);
+        handleMarginEnd = context.getResources().getDimensionPixelSize(R.dimen.rrvl_handle_margin_end);
+
+        bubbleTextPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        bubbleTextPaint.setColor(ContextCompat.getColor(context, R.color.rrvl_bubble_text_color));
+        bubbleTextPaint.setTextSize(context.getResources().getDimension(R.dimen.rrvl_bubble_text_size));
+        bubbleTextPaint.setTextAlign(Paint.Align.CENTER);
+
+        handleAnimator = ValueAnimator.ofFloat(0f, 1f).setDuration(HANDLE_ANIMATION_DURATION);
+        handleAnimator.addUpdateListener(new ValueAnimator.AnimatorUpdateListener() {
+            @Override
+            public void onAnimationUpdate(ValueAnimator animation) {
+                handleAlpha = (float) animation.getAnimatedValue();
+                invalidate();
+            }
+        });
+        handleAnimator.addListener(new AnimatorListenerAdapter() {
+            @Override
+            public void onAnimationEnd(Animator animation) {
+                super.onAnimationEnd(animation);
+                // Only notify if the animation actually finished, rather than being cancelled part of the way.
+                if (handleShowing && handleAlpha == 1f) notifyHandleListener(FastScrollerHandleState.VISIBLE);
+                else if (!handleShowing && handleAlpha == 0f) {
+                    handleVisible = false;
+                    notifyHandleListener(FastScrollerHandleState.HIDDEN);
+                }
+            }
+        });
+
+        bubbleAnimator = ValueAnimator.ofFloat(0f, 1f).setDuration(BUBBLE_ANIMATION_DURATION);
+        bubbleAnimator.addUpdateListener(new ValueAnimator.AnimatorUpdateListener() {
+            @Override
+            public void onAnimationUpdate(ValueAnimator animation) {
+                bubbleAlpha = (float) animation.getAnimatedValue();
+                invalidate();
+            }
+        });
+    }
+
+    @Override
+    public void setRecyclerView(RecyclerView recyclerView) {
+        if (this.recyclerView == recyclerView) return;
+
+        if (this.recyclerView != null) {
+            this.recyclerView.removeItemDecoration(this);
+            this.recyclerView.removeOnItemTouchListener(this);
+            this.recyclerView.removeOnScrollListener(onScrollListener);
+        }
+
+        this.recyclerView = recyclerView;
+        if (recyclerView == null) {
+            handleAnimator.cancel();
+            bubbleAnimator.cancel();
+            return;
+        }
+
+        recyclerView.addItemDecoration(this);
+        recyclerView.addOnItemTouchListener(this);
+        recyclerView.addOnScrollListener(onScrollListener);
+    }
+
+    @Override
+    public void setShown(boolean shown) {
+        if (this.shown == shown) return;
+        this.shown = shown;
+        invalidate();
+    }
+
+    @Override
+    public boolean getAutoHideHandle() {
+        return autoHideHandle;
+    }
+
+    @Override
+    public void setAutoHideHandle(boolean autoHideHandle) {
+        if (this.autoHideHandle && !autoHideHandle) showHandle();
+        else if (!this.autoHideHandle && autoHideHandle) hideHandle();
+        this.autoHideHandle = autoHideHandle;
+    }
+
+    @Override
+    public int getAutoHideDelay() {
+        return autoHideDelay;
+    }
+
+    @Override
+    public void setAutoHideDelay(int autoHideDelay) {
+        if (autoHideDelay < 0) this.autoHideDelay = FastScroller.DEFAULT_HANDLE_HIDE_DELAY;
+        else this.autoHideDelay = autoHideDelay;
+    }
+
+    @Override
+    public boolean getUseBubble() {
+        return useBubble;
+    }
+
+    @Override
+    public void setUseBubble(boolean useBubble) {
+        if (this.useBubble && !useBubble) hideBubble();
+        this.useBubble = useBubble;
+    }
+
+    @Override
+    public void setBubbleTextProvider(BubbleTextProvider bubbleTextProvider) {
+        this.bubbleTextProvider = bubbleTextProvider;
+    }
+
+    @Override
+    public void setBubbleTextLoader(AsyncBubbleTextLoader bubbleTextLoader) {
+        this.bubbleTextLoader = bubbleTextLoader;
+    }
+
+    @Override
+    public void setHandleStateListener(FastScrollHandleStateListener handleStateListener) {
+        this.handleStateListener = handleStateListener;
+    }
+
+    @Override
+    public void setDragStateListener(FastScrollHandleStateListener dragStateListener) {
+        this.dragStateListener = dragStateListener;
+    }
+
+    @Override
+    public void setRowHeightIndex(RowHeightIndex rowHeightIndex) {
+        this.rowHeightIndex = rowHeightIndex;
+    }
+
+    @Override
+    public void onDrawOver(Canvas c, RecyclerView parent, RecyclerView.State state) {
+        if (!shown || (!handleVisible && bubbleAlpha == 0f)) return;
+        int height = parent.getHeight();
+        boolean rtl = parent.getLayoutDirection() == View.LAYOUT_DIRECTION_RTL;
+
+        // Figure out where the handle and bubble should be vertically.
+        float y, proportion;
+        if (dragging) {
+            y = touchY;
+            proportion = 0.5f;
+        } else {
+            int range = parent.computeVerticalScrollRange(), extent = parent.computeVerticalScrollExtent();
+            proportion = FastScroller.computeMaxScrollOffset(range, extent) <= 0 ? 0f
+                    : FastScroller.computeScrollProportionRelativeToMax(parent.computeVerticalScrollOffset(), range,
+                    extent);
+            y = height * proportion;
+        }
+        int handleTop = (int) FastScroller.getValueInRange(0, height - handleHeight, y - handleHeight * proportion);
+
+        // And horizontally.
+        int handleLeft = rtl ? handleMarginEnd : parent.getWidth() - handleMarginEnd - handleWidth;
+        if (handleVisible) {
+            handleDrawable.setAlpha((int) (handleAlpha * 255));
+            handleDrawable.setBounds(handleLeft, handleTop, handleLeft + handleWidth, handleTop + handleHeight);
+            handleDrawable.draw(c);
+        }
+
+        if (bubbleAlpha > 0f) {
+            int bubbleTop = (int) FastScroller.getValueInRange(0, height - bubbleHeight - handleHeight / 2,
+                    y - bubbleHeight);
+            int bubbleLeft = rtl ? handleLeft + handleWidth + handlePaddingStart
+                    : handleLeft - handlePaddingStart - bubbleWidth;
+            bubbleDrawable.setAlpha((int) (bubbleAlpha * 255));
+            bubbleDrawable.setBounds(bubbleLeft, bubbleTop, bubbleLeft + bubbleWidth, bubbleTop + bubbleHeight);
+            bubbleDrawable.draw(c);
+
+            bubbleTextPaint.setAlpha((int) (bubbleAlpha * 255));
+            float textY = bubbleTop + bubbleHeight / 2f - (bubbleTextPaint.descent() + bubbleTextPaint.ascent()) / 2f;
+            c.drawText(bubbleText, bubbleLeft + bubbleWidth / 2f, textY, bubbleTextPaint);
+        }
+    }
+
+    @Override
+    public boolean onInterceptTouchEvent(RecyclerView rv, MotionEvent e) {
+        if (dragging) return true;
+        if (e.getActionMasked() != MotionEvent.ACTION_DOWN || !shown || !handleVisible) return false;
+
+        // If the touch event isn't on the handle's track, ignore this.
+        float trackStart = handleMarginEnd + handleWidth + handlePaddingStart;
+        if (rv.getLayoutDirection() == View.LAYOUT_DIRECTION_RTL ? e.getX() > trackStart
+                : e.getX() < rv.getWidth() - trackStart) return false;
+
+        // If we're using the bubble, show it now.
+        if (useBubble) showBubble();
+        // Select the handle.
+        dragging = true;
+        handleDrawable.setState(STATE_SELECTED);
+        notifyHandleListener(FastScrollerHandleState.PRESSED);
+        onHandleMoved(rv, e.getY());
+        return true;
+    }
+
+    @Override
+    public void onTouchEvent(RecyclerView rv, MotionEvent e) {
+        switch (e.getActionMasked()) {
+            case MotionEvent.ACTION_MOVE:
+                onHandleMoved(rv, e.getY());
+                break;
+            case MotionEvent.ACTION_UP:
+            case MotionEvent.ACTION_CANCEL:
+                // Un-select the handle.
+                dragging = false;
+                handleDrawable.setState(STATE_DEFAULT);
+                notifyHandleListener(FastScrollerHandleState.RELEASED);
+                // Hide the bubble (if we're using it).
+                hideBubble();
+                // If we have auto-hide turned on, make sure we hide the handle (after a delay).
+                if (autoHideHandle) hideHandle();
+                invalidate();
+                break;
+        }
+    }
+
+    @Override
+    public void onRequestDisallowInterceptTouchEvent(boolean disallowIntercept) {
+        // Nothing to do, we can't be disallowed once we've started dragging.
+    }
+
+    private void onHandleMoved(RecyclerView rv, float y) {
+        // If we have auto-hide turned on, make sure the handle is shown.
+        if (autoHideHandle) showHandle();
+        touchY = y;
+
+        int height = rv.getHeight();
+        float handleTop = FastScroller.getValueInRange(0, height - handleHeight, y - handleHeight * 0.5f);
+        float rawTargetItemProportion;
+        if (handleTop == 0) rawTargetItemProportion = 0f;
+        else if (handleTop + handleHeight >= height) rawTargetItemProportion = 1f;
+        else rawTargetItemProportion = y / ((float) height - (float) handleHeight);
+
+        int targetPos = FastScroller.scrollRecyclerViewTo(rv, rowHeightIndex, rawTargetItemProportion);
+        if (useBubble) {
+            if (bubbleTextLoader != null) bubbleTextLoader.load(targetPos, bubbleTextCallback);
+            else if (bubbleTextProvider == null)
+                throw new IllegalStateException("You haven't set a BubbleTextProvider.");
+            else setBubbleText(bubbleTextProvider.getFastScrollBubbleText(targetPos));
+        }
+        invalidate();
+    }
+
+    private void setBubbleText(String text) {
+        bubbleText = text != null ? text : "";
+        invalidate();
+    }
+
+    /**
+     * Show the handle. If {@link #autoHideHandle} is false, this just makes it visible immediately, otherwise it
+     * animates the handle's alpha from wherever it currently is, reusing {@link #handleAnimator}.
+     */
+    private void showHandle() {
+        if (!autoHideHandle) {
+            handleAnimator.cancel();
+            handleShowing = true;
+            handleAlpha = 1f;
+            if (!handleVisible) {
+                handleVisible = true;
+                notifyHandleListener(FastScrollerHandleState.VISIBLE);
+            }
+            invalidate();
+            return;
+        }
+
+        if (handleShowing && (handleAlpha == 1f || handleAnimator.isRunning())) return;
+        if (handleAlpha == 1f) {
+            // We were waiting to hide the handle, just stop waiting.
+            handleAnimator.cancel();
+            handleShowing = true;
+            return;
+        }
+        handleShowing = true;
+        handleVisible = true;
+        animate(handleAnimator, handleAlpha, 1f, 0);
+    }
+
+    /**
+     * Hide the handle. If {@link #autoHideHandle} is false, this just hides it immediately, otherwise it animates the
+     * handle's alpha to 0 after {@link #autoHideDelay}, reusing {@link #handleAnimator}.
+     */
+    private void hideHandle() {
+        if (!autoHideHandle) {
+            handleAnimator.cancel();
+            handleShowing = false;
+            handleAlpha = 0f;
+            if (handleVisible) {
+                handleVisible = false;
+                notifyHandleListener(FastScrollerHandleState.HIDDEN);
+            }
+            invalidate();
+            return;
+        }
+
+        if (!handleShowing) return;
+        handleShowing = false;
+        animate(handleAnimator, handleAlpha, 0f, autoHideDelay);
+    }
+
+    /**
+     * Show the bubble, unless {@link #useBubble} is false.
+     */
+    private void showBubble() {
+        if (!useBubble || bubbleShowing) return;
+        bubbleShowing = true;
+        animate(bubbleAnimator, bubbleAlpha, 1f, 0);
+    }
+
+    /**
+     * Hide the bubble. If {@link #useBubble} is false, it's hidden immediately.
+     */
+    private void hideBubble() {
+        if (!useBubble) {
+            bubbleAnimator.cancel();
+            bubbleShowing = false;
+            bubbleAlpha = 0f;
+            invalidate();
+            return;
+        }
+        if (!bubbleShowing) return;
+        bubbleShowing = false;
+        animate(bubbleAnimator, bubbleAlpha, 0f, 0);
+    }
+
+    private static void animate(ValueAnimator animator, float from, float to, long delay) {
+        animator.cancel();
+        animator.setFloatValues(from, to);
+        animator.setStartDelay(delay);
+        animator.start();
+    }
+
+    private void invalidate() {
+        if (recyclerView != null) recyclerView.invalidate();
+    }
+
+    /**
+     * Convenience method to notify the handle listeners.
+     * @param state State to notify the handle listeners of.
+     */
+    private void notifyHandleListener(FastScrollerHandleState state) {
+        if (dragStateListener != null && (state == FastScrollerHandleState.PRESSED ||
+                state == FastScrollerHandleState.RELEASED)) dragStateListener.onHandleStateChanged(state);
+        if (handleStateListener != null) handleStateListener.onHandleStateChanged(state);
+    }
+}
@@ -0,0 +1,19 @@
+package com.bkromhout.rrvl;
+
+/**
+ * Decides whether the changes from a diff should be animated by the {@link RealmRecyclerView}'s {@code ItemAnimator}.
+ * <p/>
+ * Animating a few inserted or removed rows looks nice, but animating thousands of them (say, after a sync) means
+ * dozens of slow frames. When this returns false, the {@code ItemAnimator} is removed until the changes have been laid
+ * out, so they land in one frame.
+ * @see RealmRecyclerView#setItemAnimationPolicy(ItemAnimationPolicy)
+ */
+public interface ItemAnimationPolicy {
+    /**
+     * Called right before the adapter notifies the {@link RealmRecyclerView} of the changes from a diff.
+     * @param changedRows Number of rows which were inserted, removed, or changed.
+     * @param rangeCount  Number of ranges which the changes are notified in.
+     * @return True to animate the changes, false to apply them without animations.
+     */
+    boolean shouldAnimate(int changedRows, int rangeCount);
+}
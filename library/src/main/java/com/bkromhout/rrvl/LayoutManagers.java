@@ -0,0 +1,184 @@
+package com.bkromhout.rrvl;
+
+import androidx.recyclerview.widget.GridLayoutManager;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+import androidx.recyclerview.widget.StaggeredGridLayoutManager;
+
+/**
+ * Lets the rest of the library work with {@code LinearLayoutManager}s, {@code GridLayoutManager}s (which are also
+ * {@code LinearLayoutManager}s), and {@code StaggeredGridLayoutManager}s without caring which one it has.
+ * <p/>
+ * Grids are treated as lists of rows (or columns, if they scroll horizontally), so that the fast scroller can map its
+ * handle to rows rather than to items; otherwise a grid with 3 spans would seem 3 times longer than it is.
+ */
+final class LayoutManagers {
+    private LayoutManagers() {
+    }
+
+    /**
+     * Check whether a layout manager is one which we support.
+     * @param lm Layout manager.
+     * @return True if {@code lm} is a {@code LinearLayoutManager}, {@code GridLayoutManager}, or {@code
+     * StaggeredGridLayoutManager}.
+     */
+    static boolean isSupported(RecyclerView.LayoutManager lm) {
+        return lm instanceof LinearLayoutManager || lm instanceof StaggeredGridLayoutManager;
+    }
+
+    /**
+     * Check whether a layout manager can put more than one item side by side.
+     * @param lm Layout manager.
+     * @return True if {@code lm} is a {@code GridLayoutManager} or a {@code StaggeredGridLayoutManager}.
+     */
+    static boolean isGrid(RecyclerView.LayoutManager lm) {
+        return lm instanceof GridLayoutManager || lm instanceof StaggeredGridLayoutManager;
+    }
+
+    /**
+     * Make the header and footer rows of a {@link RealmRecyclerViewAdapter} take up all of a grid's spans. The grid's
+     * current {@code SpanSizeLookup} is still used for the other rows.
+     * @param lm           Grid layout manager.
+     * @param recyclerView The RecyclerView which {@code lm} is used by.
+     */
+    static void useFullSpanForExtraRows(GridLayoutManager lm, RecyclerView recyclerView) {
+        if (lm.getSpanSizeLookup() instanceof ExtraRowSpanSizeLookup) return;
+        lm.setSpanSizeLookup(new ExtraRowSpanSizeLookup(lm, recyclerView, lm.getSpanSizeLookup()));
+    }
+
+    /**
+     * Get the position of the first visible item.
+     * @param lm Layout manager.
+     * @return Position of the first visible item, or -1 if there aren't any.
+     */
+    static int findFirstVisibleItemPosition(RecyclerView.LayoutManager lm) {
+        if (lm instanceof LinearLayoutManager) return ((LinearLayoutManager) lm).findFirstVisibleItemPosition();
+        if (!(lm instanceof StaggeredGridLayoutManager)) return -1;
+
+        // Each span has its own first visible item; we want the lowest one.
+        int first = -1;
+        for (int pos : ((StaggeredGridLayoutManager) lm).findFirstVisibleItemPositions(null))
+            if (pos != RecyclerView.NO_POSITION && (first == -1 || pos < first)) first = pos;
+        return first;
+    }
+
+    /**
+     * Get the position of the last visible item.
+     * @param lm Layout manager.
+     * @return Position of the last visible item, or -1 if there aren't any.
+     */
+    static int findLastVisibleItemPosition(RecyclerView.LayoutManager lm) {
+        if (lm instanceof LinearLayoutManager) return ((LinearLayoutManager) lm).findLastVisibleItemPosition();
+        if (!(lm instanceof StaggeredGridLayoutManager)) return -1;
+
+        // Each span has its own last visible item; we want the highest one.
+        int last = -1;
+        for (int pos : ((StaggeredGridLayoutManager) lm).findLastVisibleItemPositions(null))
+            if (pos > last) last = pos;
+        return last;
+    }
+
+    /**
+     * Scroll so that the item at {@code position} is at the start of the viewport, offset by {@code offset} pixels.
+     * @param lm       Layout manager.
+     * @param position Position to scroll to.
+     * @param offset   Distance between the start of the item and the start of the viewport.
+     */
+    static void scrollToPositionWithOffset(RecyclerView.LayoutManager lm, int position, int offset) {
+        if (lm instanceof LinearLayoutManager) ((LinearLayoutManager) lm).scrollToPositionWithOffset(position, offset);
+        else if (lm instanceof StaggeredGridLayoutManager)
+            ((StaggeredGridLayoutManager) lm).scrollToPositionWithOffset(position, offset);
+        else if (lm != null) lm.scrollToPosition(position);
+    }
+
+    /**
+     * Get the number of rows which {@code itemCount} items take up.
+     * @param lm        Layout manager.
+     * @param itemCount Number of items.
+     * @return Number of rows.
+     */
+    static int getRowCount(RecyclerView.LayoutManager lm, int itemCount) {
+        if (itemCount <= 0) return 0;
+        GridLayoutManager.SpanSizeLookup lookup = getCustomSpanSizeLookup(lm);
+        if (lookup != null) return lookup.getSpanGroupIndex(itemCount - 1, getSpanCount(lm)) + 1;
+        int spanCount = getSpanCount(lm);
+        return (itemCount + spanCount - 1) / spanCount;
+    }
+
+    /**
+     * Get the position of the first item in a row.
+     * <p/>
+     * For a {@code GridLayoutManager} whose items take up different numbers of spans, this does a binary search using
+     * the grid's {@code SpanSizeLookup}, so enabling its span group index cache is a good idea. A {@code
+     * StaggeredGridLayoutManager} doesn't have real rows, so there we assume that items are spread evenly across the
+     * spans, which is close enough for fast scrolling.
+     * @param lm        Layout manager.
+     * @param row       Row index.
+     * @param itemCount Number of items.
+     * @return Position of the first item in {@code row}.
+     */
+    static int getFirstPositionInRow(RecyclerView.LayoutManager lm, int row, int itemCount) {
+        if (itemCount <= 0) return 0;
+        GridLayoutManager.SpanSizeLookup lookup = getCustomSpanSizeLookup(lm);
+        if (lookup == null) return Math.min(itemCount - 1, row * getSpanCount(lm));
+
+        int spanCount = getSpanCount(lm);
+        int low = 0, high = itemCount - 1;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (lookup.getSpanGroupIndex(mid, spanCount) < row) low = mid + 1;
+            else high = mid;
+        }
+        return low;
+    }
+
+    /**
+     * Get the number of spans.
+     * @param lm Layout manager.
+     * @return Number of spans, which is 1 for a {@code LinearLayoutManager}.
+     */
+    static int getSpanCount(RecyclerView.LayoutManager lm) {
+        if (lm instanceof GridLayoutManager) return Math.max(1, ((GridLayoutManager) lm).getSpanCount());
+        if (lm instanceof StaggeredGridLayoutManager)
+            return Math.max(1, ((StaggeredGridLayoutManager) lm).getSpanCount());
+        return 1;
+    }
+
+    /**
+     * Get the {@code SpanSizeLookup} of a {@code GridLayoutManager}, unless it's the default one (which makes every
+     * item take up one span, so rows can be found with simple math).
+     */
+    private static GridLayoutManager.SpanSizeLookup getCustomSpanSizeLookup(RecyclerView.LayoutManager lm) {
+        if (!(lm instanceof GridLayoutManager)) return null;
+        GridLayoutManager.SpanSizeLookup lookup = ((GridLayoutManager) lm).getSpanSizeLookup();
+        return lookup instanceof GridLayoutManager.DefaultSpanSizeLookup ? null : lookup;
+    }
+
+    /**
+     * Gives header and footer rows the full span count, and asks another {@code SpanSizeLookup} about the rest.
+     */
+    private static final class ExtraRowSpanSizeLookup extends GridLayoutManager.SpanSizeLookup {
+        private final GridLayoutManager lm;
+        private final RecyclerView recyclerView;
+        private final GridLayoutManager.SpanSizeLookup wrapped;
+
+        private ExtraRowSpanSizeLookup(GridLayoutManager lm, RecyclerView recyclerView,
+                                       GridLayoutManager.SpanSizeLookup wrapped) {
+            this.lm = lm;
+            this.recyclerView = recyclerView;
+            this.wrapped = wrapped;
+            // GridLayoutManager clears these caches whenever the adapter's items change, and they keep the fast
+            // scroller's row lookups cheap.
+            setSpanIndexCacheEnabled(true);
+            setSpanGroupIndexCacheEnabled(true);
+        }
+
+        @Override
+        public int getSpanSize(int position) {
+            RecyclerView.Adapter adapter = recyclerView.getAdapter();
+            if (adapter instanceof RealmRecyclerViewAdapter
+                    && !((RealmRecyclerViewAdapter) adapter).isDataPosition(position)) return lm.getSpanCount();
+            return wrapped != null ? wrapped.getSpanSize(position) : 1;
+        }
+    }
+}
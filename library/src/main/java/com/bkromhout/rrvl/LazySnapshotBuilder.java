@@ -0,0 +1,90 @@
+package com.bkromhout.rrvl;
+
+import android.os.Handler;
+import android.os.Looper;
+import io.realm.RealmModel;
+import io.realm.RealmResults;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Builds the list of UIDs for a {@code RealmResults} a little at a time, so that large lists don't block the thread
+ * (and the first frame) while it's being built.
+ * <p/>
+ * Realm objects can't be passed between threads, so rather than doing the work on a background thread, we do it on the
+ * results' own thread in small time-boxed chunks which are posted to its looper. Since the chunks are just normal
+ * messages, frames (and anything else) can be drawn between them.
+ * <p/>
+ * The results must not change while the snapshot is being built; if they do, {@link #cancel()} the builder and start a
+ * new one.
+ */
+final class LazySnapshotBuilder<T extends RealmModel & UIDModel> implements Runnable {
+    interface Callback {
+        /**
+         * Called on the results' thread once all of the UIDs have been read.
+         * @param ids UIDs of the items in the results.
+         */
+        void onSnapshotBuilt(List ids);
+    }
+
+    /**
+     * How long we're willing to spend reading UIDs in each chunk.
+     */
+    private static final long CHUNK_BUDGET_NS = 4_000_000L;
+    /**
+     * How many UIDs we read between checks of the time.
+     */
+    private static final int CHECK_INTERVAL = 64;
+
+    private final Handler handler = new Handler(Looper.myLooper());
+    private final RealmResults<T> results;
+    private final Callback callback;
+    private final List ids;
+    private boolean cancelled = false;
+
+    /**
+     * Create a new {@link LazySnapshotBuilder}. Call {@link #start()} to actually start building the snapshot.
+     * @param results  Results to read UIDs from.
+     * @param callback Callback to notify when the snapshot is built.
+     */
+    LazySnapshotBuilder(RealmResults<T> results, Callback callback) {
+        this.results = results;
+        this.callback = callback;
+        this.ids = new ArrayList(results.size());
+    }
+
+    void start() {
+        handler.post(this);
+    }
+
+    void cancel() {
+        cancelled = true;
+        handler.removeCallbacks(this);
+    }
+
+    @Override
+    public void run() {
+        if (cancelled || !results.isValid()) return;
+
+        int size = results.size();
+        long deadline = System.nanoTime() + CHUNK_BUDGET_NS;
+        Tracing.begin(Tracing.SNAPSHOT);
+        try {
+            for (int i = ids.size(); i < size; i++) {
+                //noinspection unchecked
+                ids.add(results.get(i).getUID());
+                if (i % CHECK_INTERVAL == 0 && System.nanoTime() > deadline) {
+                    // Out of time, carry on later.
+                    handler.post(this);
+                    return;
+                }
+            }
+            Tracing.counter(Tracing.LIST_SIZE_COUNTER, size);
+        } finally {
+            Tracing.end();
+        }
+
+        callback.onSnapshotBuilt(ids);
+    }
+}
@@ -0,0 +1,221 @@
+package com.bkromhout.rrvl;
+
+import android.app.Activity;
+import android.content.Context;
+import android.content.ContextWrapper;
+import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.util.SparseArray;
+import android.view.Choreographer;
+import android.view.Display;
+import android.view.FrameMetrics;
+import android.view.Window;
+import androidx.recyclerview.widget.RecyclerView;
+
+import java.util.EnumMap;
+
+/**
+ * Records how long rows take to create and bind, per view type, and how long frames take while a RecyclerView is being
+ * dragged, flung, or fast scrolled.
+ * <p/>
+ * Frame times come from {@code FrameMetrics} when we're running on Nougat or later in an Activity's window, which
+ * measures the actual work done for each frame. Otherwise we fall back to the time between {@code Choreographer}
+ * callbacks, which only shows how late each frame started; those callbacks are only posted while scrolling.
+ * <p/>
+ * Row times are only touched on the UI thread. Frame times may be recorded on the frame metrics thread, so those are
+ * guarded by {@link #frameStats}.
+ */
+final class PerformanceMonitor extends RecyclerView.OnScrollListener implements RowTimer.Listener {
+    private static final long DEFAULT_FRAME_INTERVAL_NS = 16_666_667L;
+
+    private final RecyclerView recyclerView;
+    private final SparseArray<RollingHistogram> createNs = new SparseArray<>();
+    private final SparseArray<RollingHistogram> bindNs = new SparseArray<>();
+    private final EnumMap<ScrollPhase, FrameCounter> frameStats = new EnumMap<>(ScrollPhase.class);
+    /**
+     * What the RecyclerView is doing, or null if it's idle (in which case we don't record frames).
+     */
+    private volatile ScrollPhase phase = null;
+    private volatile long frameIntervalNs = DEFAULT_FRAME_INTERVAL_NS;
+    private int scrollState = RecyclerView.SCROLL_STATE_IDLE;
+    private boolean fastScrollDragging = false;
+    // Used when we're getting frame times from FrameMetrics.
+    private Window window = null;
+    private HandlerThread metricsThread = null;
+    // Used when we're getting frame times from Choreographer.
+    private boolean frameCallbackPosted = false;
+    private long lastFrameNs = 0L;
+
+    private final Window.OnFrameMetricsAvailableListener frameMetricsListener =
+            Build.VERSION.SDK_INT >= Build.VERSION_CODES.N ? new Window.OnFrameMetricsAvailableListener() {
+                @Override
+                public void onFrameMetricsAvailable(Window window, FrameMetrics frameMetrics, int dropCount) {
+                    ScrollPhase current = phase;
+                    if (current != null) recordFrame(current, frameMetrics.getMetric(FrameMetrics.TOTAL_DURATION));
+                }
+            } : null;
+
+    private final Choreographer.FrameCallback frameCallback = new Choreographer.FrameCallback() {
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            frameCallbackPosted = false;
+            ScrollPhase current = phase;
+            if (current == null) {
+                lastFrameNs = 0L;
+                return;
+            }
+            if (lastFrameNs != 0L) recordFrame(current, frameTimeNanos - lastFrameNs);
+            lastFrameNs = frameTimeNanos;
+            postFrameCallback();
+        }
+    };
+
+    PerformanceMonitor(RecyclerView recyclerView) {
+        this.recyclerView = recyclerView;
+        for (ScrollPhase scrollPhase : ScrollPhase.values()) frameStats.put(scrollPhase, new FrameCounter());
+    }
+
+    /**
+     * Start getting frame times from {@code FrameMetrics}, if we can. Called when the RecyclerView is attached to its
+     * window.
+     * @param context The RecyclerView's context.
+     */
+    void attach(Context context) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.N || window != null) return;
+        while (!(context instanceof Activity) && context instanceof ContextWrapper)
+            context = ((ContextWrapper) context).getBaseContext();
+        if (!(context instanceof Activity) || ((Activity) context).getWindow() == null) return;
+
+        window = ((Activity) context).getWindow();
+        metricsThread = new HandlerThread("rrvl-frame-metrics", Process.THREAD_PRIORITY_BACKGROUND);
+        metricsThread.start();
+        window.addOnFrameMetricsAvailableListener(frameMetricsListener, new Handler(metricsThread.getLooper()));
+    }
+
+    /**
+     * Stop getting frame times from {@code FrameMetrics}, and stop any {@code Choreographer} callbacks. Called when
+     * the RecyclerView is detached from its window, and when monitoring is turned off.
+     */
+    void detach() {
+        // The window is only ever set on Nougat or later, but lint can't tell that.
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N && window != null) {
+            window.removeOnFrameMetricsAvailableListener(frameMetricsListener);
+            metricsThread.quitSafely();
+            window = null;
+            metricsThread = null;
+        }
+        if (frameCallbackPosted) Choreographer.getInstance().removeFrameCallback(frameCallback);
+        frameCallbackPosted = false;
+        lastFrameNs = 0L;
+    }
+
+    @Override
+    public void onRowTimed(int viewType, long createTime, long bindTime) {
+        if (createTime >= 0L) getHistogram(createNs, viewType).record(createTime);
+        getHistogram(bindNs, viewType).record(bindTime);
+    }
+
+    @Override
+    public void onScrollStateChanged(RecyclerView recyclerView, int newState) {
+        scrollState = newState;
+        updatePhase();
+    }
+
+    void setFastScrollDragging(boolean dragging) {
+        fastScrollDragging = dragging;
+        updatePhase();
+    }
+
+    /**
+     * Take a snapshot of the measurements so far.
+     * @return Performance snapshot.
+     */
+    PerformanceSnapshot snapshot() {
+        SparseArray<PerformanceSnapshot.LatencyStats> createStats = new SparseArray<>(createNs.size());
+        for (int i = 0; i < createNs.size(); i++)
+            createStats.put(createNs.keyAt(i), new PerformanceSnapshot.LatencyStats(createNs.valueAt(i)));
+        SparseArray<PerformanceSnapshot.LatencyStats> bindStats = new SparseArray<>(bindNs.size());
+        for (int i = 0; i < bindNs.size(); i++)
+            bindStats.put(bindNs.keyAt(i), new PerformanceSnapshot.LatencyStats(bindNs.valueAt(i)));
+
+        EnumMap<ScrollPhase, PerformanceSnapshot.FrameStats> frames = new EnumMap<>(ScrollPhase.class);
+        synchronized (frameStats) {
+            for (ScrollPhase scrollPhase : ScrollPhase.values()) {
+                FrameCounter counter = frameStats.get(scrollPhase);
+                frames.put(scrollPhase, new PerformanceSnapshot.FrameStats(counter.frames, counter.janky,
+                        counter.dropped, new PerformanceSnapshot.LatencyStats(counter.frameNs)));
+            }
+        }
+        return new PerformanceSnapshot(createStats, bindStats, frames);
+    }
+
+    /**
+     * Drop all of the measurements so far.
+     */
+    void reset() {
+        createNs.clear();
+        bindNs.clear();
+        synchronized (frameStats) {
+            for (ScrollPhase scrollPhase : ScrollPhase.values()) frameStats.put(scrollPhase, new FrameCounter());
+        }
+    }
+
+    private void updatePhase() {
+        ScrollPhase newPhase;
+        if (fastScrollDragging) newPhase = ScrollPhase.FAST_SCROLL;
+        else if (scrollState == RecyclerView.SCROLL_STATE_DRAGGING) newPhase = ScrollPhase.DRAG;
+        else if (scrollState == RecyclerView.SCROLL_STATE_SETTLING) newPhase = ScrollPhase.FLING;
+        else newPhase = null;
+        if (newPhase == phase) return;
+
+        if (phase == null) {
+            // The refresh rate can change while we're idle (or we may not have been attached before), so check it
+            // again each time we start measuring.
+            Display display = recyclerView.getDisplay();
+            if (display != null && display.getRefreshRate() > 0f)
+                frameIntervalNs = (long) (1_000_000_000d / display.getRefreshRate());
+        }
+        phase = newPhase;
+        if (phase != null && window == null) postFrameCallback();
+    }
+
+    private void postFrameCallback() {
+        if (frameCallbackPosted) return;
+        frameCallbackPosted = true;
+        Choreographer.getInstance().postFrameCallback(frameCallback);
+    }
+
+    private void recordFrame(ScrollPhase scrollPhase, long durationNs) {
+        long interval = frameIntervalNs;
+        synchronized (frameStats) {
+            FrameCounter counter = frameStats.get(scrollPhase);
+            counter.frames++;
+            if (durationNs > interval) {
+                counter.janky++;
+                counter.dropped += (durationNs - 1) / interval;
+            }
+            counter.frameNs.record(durationNs);
+        }
+    }
+
+    private static RollingHistogram getHistogram(SparseArray<RollingHistogram> histograms, int viewType) {
+        RollingHistogram histogram = histograms.get(viewType);
+        if (histogram == null) {
+            histogram = new RollingHistogram();
+            histograms.put(viewType, histogram);
+        }
+        return histogram;
+    }
+
+    /**
+     * Frame measurements for one {@link ScrollPhase}.
+     */
+    private static final class FrameCounter {
+        private final RollingHistogram frameNs = new RollingHistogram();
+        private long frames = 0L;
+        private long janky = 0L;
+        private long dropped = 0L;
+    }
+}
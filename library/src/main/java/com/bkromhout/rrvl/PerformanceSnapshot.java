@@ -0,0 +1,200 @@
+package com.bkromhout.rrvl;
+
+import android.util.SparseArray;
+
+import java.util.EnumMap;
+
+/**
+ * Aggregated measurements from a {@link RealmRecyclerView}'s performance monitoring: how long rows of each view type
+ * took to create and bind, and how long frames took while it was scrolling. Percentiles are computed from the most
+ * recent samples only, so they follow changes in behavior.
+ * <p/>
+ * Times are in nanoseconds.
+ * @see RealmRecyclerView#getPerformanceSnapshot()
+ */
+public final class PerformanceSnapshot {
+    private final SparseArray<LatencyStats> createStats;
+    private final SparseArray<LatencyStats> bindStats;
+    private final EnumMap<ScrollPhase, FrameStats> frameStats;
+
+    PerformanceSnapshot(SparseArray<LatencyStats> createStats, SparseArray<LatencyStats> bindStats,
+                        EnumMap<ScrollPhase, FrameStats> frameStats) {
+        this.createStats = createStats;
+        this.bindStats = bindStats;
+        this.frameStats = frameStats;
+    }
+
+    /**
+     * Get the view types which have been bound at least once.
+     * @return View types.
+     */
+    @SuppressWarnings("unused")
+    public int[] getViewTypes() {
+        int[] viewTypes = new int[bindStats.size()];
+        for (int i = 0; i < viewTypes.length; i++) viewTypes[i] = bindStats.keyAt(i);
+        return viewTypes;
+    }
+
+    /**
+     * Get how long it took to create view holders of a view type.
+     * @param viewType View type.
+     * @return Create times, or null if no view holders of {@code viewType} were seen being created.
+     */
+    @SuppressWarnings("unused")
+    public LatencyStats getCreateStats(int viewType) {
+        return createStats.get(viewType);
+    }
+
+    /**
+     * Get how long it took to bind rows of a view type. Cheap binds (see {@link
+     * RealmRecyclerViewAdapter#onBindPlaceholder(androidx.recyclerview.widget.RecyclerView.ViewHolder, int)}) aren't
+     * counted.
+     * @param viewType View type.
+     * @return Bind times, or null if no rows of {@code viewType} were bound.
+     */
+    @SuppressWarnings("unused")
+    public LatencyStats getBindStats(int viewType) {
+        return bindStats.get(viewType);
+    }
+
+    /**
+     * Get how long frames took during a scroll phase.
+     * @param phase Scroll phase.
+     * @return Frame stats. If no frames were measured during {@code phase}, its counts are 0.
+     */
+    @SuppressWarnings("unused")
+    public FrameStats getFrameStats(ScrollPhase phase) {
+        return frameStats.get(phase);
+    }
+
+    /**
+     * Percentiles of a latency.
+     */
+    public static final class LatencyStats {
+        private final long count;
+        private final long p50Ns;
+        private final long p90Ns;
+        private final long p99Ns;
+        private final long maxNs;
+
+        LatencyStats(RollingHistogram histogram) {
+            long[] percentiles = histogram.getPercentiles(50d, 90d, 99d, 100d);
+            this.count = histogram.getTotalCount();
+            this.p50Ns = percentiles[0];
+            this.p90Ns = percentiles[1];
+            this.p99Ns = percentiles[2];
+            this.maxNs = percentiles[3];
+        }
+
+        /**
+         * Get the number of samples which were recorded. Percentiles only use the most recent ones.
+         * @return Sample count.
+         */
+        @SuppressWarnings("unused")
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * Get the median.
+         * @return 50th percentile.
+         */
+        @SuppressWarnings("unused")
+        public long getP50Ns() {
+            return p50Ns;
+        }
+
+        /**
+         * Get the 90th percentile.
+         * @return 90th percentile.
+         */
+        @SuppressWarnings("unused")
+        public long getP90Ns() {
+            return p90Ns;
+        }
+
+        /**
+         * Get the 99th percentile.
+         * @return 99th percentile.
+         */
+        @SuppressWarnings("unused")
+        public long getP99Ns() {
+            return p99Ns;
+        }
+
+        /**
+         * Get the largest recent sample.
+         * @return Maximum.
+         */
+        @SuppressWarnings("unused")
+        public long getMaxNs() {
+            return maxNs;
+        }
+
+        @Override
+        public String toString() {
+            return "LatencyStats{count=" + count + ", p50Ns=" + p50Ns + ", p90Ns=" + p90Ns + ", p99Ns=" + p99Ns
+                    + ", maxNs=" + maxNs + "}";
+        }
+    }
+
+    /**
+     * Frame counts and percentiles of frame times for a {@link ScrollPhase}.
+     */
+    public static final class FrameStats {
+        private final long frameCount;
+        private final long jankyFrameCount;
+        private final long droppedFrameCount;
+        private final LatencyStats frameTimes;
+
+        FrameStats(long frameCount, long jankyFrameCount, long droppedFrameCount, LatencyStats frameTimes) {
+            this.frameCount = frameCount;
+            this.jankyFrameCount = jankyFrameCount;
+            this.droppedFrameCount = droppedFrameCount;
+            this.frameTimes = frameTimes;
+        }
+
+        /**
+         * Get the number of frames which were measured.
+         * @return Frame count.
+         */
+        @SuppressWarnings("unused")
+        public long getFrameCount() {
+            return frameCount;
+        }
+
+        /**
+         * Get the number of frames which took longer than one refresh interval of the display.
+         * @return Janky frame count.
+         */
+        @SuppressWarnings("unused")
+        public long getJankyFrameCount() {
+            return jankyFrameCount;
+        }
+
+        /**
+         * Get the number of refresh intervals which were missed because frames took too long. A frame which took 2.5
+         * intervals, for example, dropped 2.
+         * @return Dropped frame count.
+         */
+        @SuppressWarnings("unused")
+        public long getDroppedFrameCount() {
+            return droppedFrameCount;
+        }
+
+        /**
+         * Get the percentiles of the frame times.
+         * @return Frame times.
+         */
+        @SuppressWarnings("unused")
+        public LatencyStats getFrameTimes() {
+            return frameTimes;
+        }
+
+        @Override
+        public String toString() {
+            return "FrameStats{frameCount=" + frameCount + ", jankyFrameCount=" + jankyFrameCount
+                    + ", droppedFrameCount=" + droppedFrameCount + ", frameTimes=" + frameTimes + "}";
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package com.bkromhout.rrvl;
+
+import android.util.SparseArray;
+import android.view.View;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+
+/**
+ * Tunes a RecyclerView's prefetching and view caching based on how long its rows actually take to create and bind, and
+ * on how fast it's scrolling.
+ * <p/>
+ * Create and bind times are measured by a {@link RowTimer}, and kept as running averages per view type.
+ * <p/>
+ * Every so often while scrolling, we use those averages to size the item view cache, the pool's per-view-type limits,
+ * and the initial prefetch count used when the RecyclerView is nested in another. Types which are cheap to create and
+ * bind are left at RecyclerView's defaults, so we don't keep extra views around for them.
+ */
+final class PrefetchController extends RecyclerView.OnScrollListener implements RowTimer.Listener {
+    private static final long FRAME_NS = 16_666_667L;
+    /**
+     * Rows which take more than this much of a frame to create or bind are considered expensive.
+     */
+    private static final long EXPENSIVE_NS = FRAME_NS / 8;
+    /**
+     * Weight of each new measurement in the running averages.
+     */
+    private static final float SMOOTHING = 0.2f;
+    private static final long ADJUST_INTERVAL_NS = 250_000_000L;
+    // RecyclerView's defaults, and our limits.
+    private static final int DEFAULT_CACHE_SIZE = 2;
+    private static final int MAX_CACHE_SIZE = 12;
+    private static final int DEFAULT_MAX_SCRAP = 5;
+    private static final int MAX_SCRAP = 20;
+    private static final int DEFAULT_INITIAL_PREFETCH = 2;
+
+    private final RecyclerView recyclerView;
+    private final ScrollVelocityMonitor velocityMonitor = new ScrollVelocityMonitor(Float.MAX_VALUE,
+            new ScrollVelocityMonitor.Listener() {
+                @Override
+                public void onScrollSpeedChanged(boolean fast) {
+                    // We only use the monitor's velocity.
+                }
+            });
+    private final SparseArray<TypeStats> stats = new SparseArray<>();
+    private long lastAdjustNs = 0L;
+
+    PrefetchController(RecyclerView recyclerView) {
+        this.recyclerView = recyclerView;
+    }
+
+    @Override
+    public void onRowTimed(int viewType, long createNs, long bindNs) {
+        TypeStats typeStats = stats.get(viewType);
+        if (typeStats == null) {
+            typeStats = new TypeStats();
+            stats.put(viewType, typeStats);
+        }
+        typeStats.bindNs = average(typeStats.bindNs, bindNs);
+        if (createNs >= 0L) typeStats.createNs = average(typeStats.createNs, createNs);
+    }
+
+    @Override
+    public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+        velocityMonitor.onScrolled(recyclerView, dx, dy);
+        long now = System.nanoTime();
+        if (now - lastAdjustNs < ADJUST_INTERVAL_NS) return;
+        lastAdjustNs = now;
+        adjust();
+    }
+
+    @Override
+    public void onScrollStateChanged(RecyclerView recyclerView, int newState) {
+        velocityMonitor.onScrollStateChanged(recyclerView, newState);
+    }
+
+    /**
+     * Put the item view cache size and initial prefetch count back to RecyclerView's defaults. Pool limits are left
+     * alone, since shrinking the pool would just throw away views (and could undo pre-inflation).
+     */
+    void reset() {
+        recyclerView.setItemViewCacheSize(DEFAULT_CACHE_SIZE);
+        RecyclerView.LayoutManager lm = recyclerView.getLayoutManager();
+        if (lm instanceof LinearLayoutManager)
+            ((LinearLayoutManager) lm).setInitialPrefetchItemCount(DEFAULT_INITIAL_PREFETCH);
+        stats.clear();
+    }
+
+    private void adjust() {
+        if (stats.size() == 0 || recyclerView.getChildCount() == 0) return;
+
+        // Estimate how many rows scroll into view each frame.
+        RecyclerView.LayoutManager lm = recyclerView.getLayoutManager();
+        View child = recyclerView.getChildAt(0);
+        boolean horizontal = lm != null && lm.canScrollHorizontally();
+        int rowSize = Math.max(1, horizontal ? child.getWidth() : child.getHeight());
+        float rowsPerFrame = velocityMonitor.getVelocity() * FRAME_NS / 1_000_000_000f / rowSize;
+
+        long bindNs = 0L;
+        boolean anyExpensive = false;
+        RecyclerView.RecycledViewPool pool = recyclerView.getRecycledViewPool();
+        for (int i = 0; i < stats.size(); i++) {
+            TypeStats typeStats = stats.valueAt(i);
+            bindNs = Math.max(bindNs, typeStats.bindNs);
+            anyExpensive |= typeStats.createNs + typeStats.bindNs > EXPENSIVE_NS;
+
+            // Keep enough views of types which are expensive to create in the pool to cover a few frames of fast
+            // scrolling. We never shrink the pool once we've grown it, since that would just throw away views.
+            if (typeStats.createNs > EXPENSIVE_NS) {
+                int maxScrap = Math.min(MAX_SCRAP, DEFAULT_MAX_SCRAP + (int) Math.ceil(rowsPerFrame * 4));
+                if (maxScrap > typeStats.maxScrap) {
+                    typeStats.maxScrap = maxScrap;
+                    pool.setMaxRecycledViews(stats.keyAt(i), maxScrap);
+                }
+            }
+        }
+
+        // If rows are expensive to bind, keep more of the ones which just scrolled off bound, so that reversing
+        // direction doesn't mean binding them again.
+        int cacheSize = DEFAULT_CACHE_SIZE;
+        if (bindNs > EXPENSIVE_NS)
+            cacheSize = Math.min(MAX_CACHE_SIZE, DEFAULT_CACHE_SIZE + (int) Math.ceil(rowsPerFrame * 2));
+        recyclerView.setItemViewCacheSize(cacheSize);
+
+        // If this RecyclerView is nested in another, prepare all of the rows which will be visible when it scrolls into
+        // view, not just the first couple, if they're expensive.
+        if (lm instanceof LinearLayoutManager) ((LinearLayoutManager) lm).setInitialPrefetchItemCount(
+                anyExpensive ? Math.max(DEFAULT_INITIAL_PREFETCH, recyclerView.getChildCount() + 1)
+                        : DEFAULT_INITIAL_PREFETCH);
+    }
+
+    private static long average(long average, long sample) {
+        return average == 0L ? sample : (long) (average * (1f - SMOOTHING) + sample * SMOOTHING);
+    }
+
+    /**
+     * Measurements for one view type.
+     */
+    private static final class TypeStats {
+        private long createNs = 0L;
+        private long bindNs = 0L;
+        /**
+         * The pool limit we've set for this type, or the default if we haven't.
+         */
+        private int maxScrap = DEFAULT_MAX_SCRAP;
+    }
+}
@@ -6,7 +6,9 @@ import android.os.Build;
 import android.util.AttributeSet;
 import android.view.View;
 import android.view.ViewStub;
+import android.view.ViewTreeObserver;
 import android.widget.FrameLayout;
+import androidx.recyclerview.widget.GridLayoutManager;
 import androidx.recyclerview.widget.ItemTouchHelper;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
@@ -15,9 +17,19 @@ import androidx.recyclerview.widget.RecyclerView;
  * A RecyclerView that supports Realm.
  */
 public class RealmRecyclerView extends FrameLayout {
+    /**
+     * Default for {@link #maxAnimatedRows}.
+     */
+    private static final int DEFAULT_MAX_ANIMATED_ROWS = 200;
+    /**
+     * Default for {@link #maxAnimatedRanges}.
+     */
+    private static final int DEFAULT_MAX_ANIMATED_RANGES = 30;
+
     // Views.
     private RecyclerView recyclerView;
-    private FastScroller fastScroller;
+    private FastScroller fastScrollerView;
+    private FastScrollRenderer fastScroller;
     private ViewStub emptyContentContainer;
 
     // Attributes.
@@ -25,10 +37,104 @@ public class RealmRecyclerView extends FrameLayout {
     private boolean swipe;
     private boolean dragAndDrop;
     private boolean fastScrollEnabled;
+    private RowHeightCacheMode rowHeightCacheMode = RowHeightCacheMode.OFF;
 
     private RealmRecyclerViewAdapter adapter;
+    private BubbleTextProvider bubbleTextProvider;
+    private AsyncBubbleTextLoader bubbleTextLoader;
+    private FastScrollHandleStateListener handleStateListener;
     private ItemTouchHelper touchHelper;
     private RealmSimpleItemTouchHelperCallback touchHelperCallback;
+    private RowHeightIndex rowHeightIndex = null;
+    private ScrollVelocityMonitor velocityMonitor = null;
+    private int cheapBindVelocity = 0;
+    private boolean pauseUpdatesWhenDetached = true;
+    private ViewHolderPreInflater preInflater = null;
+    private StickyHeaderDecoration stickyHeaderDecoration = null;
+    private int maxAnimatedRows = DEFAULT_MAX_ANIMATED_ROWS;
+    private int maxAnimatedRanges = DEFAULT_MAX_ANIMATED_RANGES;
+    private ItemAnimationPolicy itemAnimationPolicy = null;
+    private PrefetchController prefetchController = null;
+    private PerformanceMonitor performanceMonitor = null;
+    /**
+     * Non-null while something needs to know how long rows take to create and bind.
+     */
+    private RowTimer rowTimer = null;
+    /**
+     * The {@code ItemAnimator} which we removed to apply a bulk change without animations, or null if we haven't.
+     */
+    private RecyclerView.ItemAnimator suspendedItemAnimator = null;
+    /**
+     * The vertical {@code LinearLayoutManager} which we use unless we're given another layout manager.
+     */
+    private LinearLayoutManager defaultLayoutManager;
+    /**
+     * The item count as of the last time the adapter's data changed, so that we only check whether the fast scroller
+     * should be shown when it actually changes.
+     */
+    private int lastItemCount = -1;
+    private boolean fastScrollVisibilityCheckPending = false;
+
+    /**
+     * Puts the suspended {@code ItemAnimator} back once the bulk change has been laid out.
+     */
+    private final ViewTreeObserver.OnGlobalLayoutListener restoreItemAnimatorListener =
+            new ViewTreeObserver.OnGlobalLayoutListener() {
+                @Override
+                public void onGlobalLayout() {
+                    recyclerView.getViewTreeObserver().removeOnGlobalLayoutListener(this);
+                    if (suspendedItemAnimator == null) return;
+                    if (recyclerView.getItemAnimator() == null) recyclerView.setItemAnimator(suspendedItemAnimator);
+                    suspendedItemAnimator = null;
+                }
+            };
+
+    /**
+     * Checks whether the fast scroller should be shown once the change which requested the check has been laid out.
+     */
+    private final ViewTreeObserver.OnGlobalLayoutListener fastScrollVisibilityListener =
+            new ViewTreeObserver.OnGlobalLayoutListener() {
+                @Override
+                public void onGlobalLayout() {
+                    recyclerView.getViewTreeObserver().removeOnGlobalLayoutListener(this);
+                    fastScrollVisibilityCheckPending = false;
+                    updateFastScrollVisibility();
+                }
+            };
+
+    /**
+     * Requests a fast scroller visibility check when the size of the viewport changes.
+     */
+    private final View.OnLayoutChangeListener viewportSizeListener = new View.OnLayoutChangeListener() {
+        @Override
+        public void onLayoutChange(View v, int left, int top, int right, int bottom, int oldLeft, int oldTop,
+                                   int oldRight, int oldBottom) {
+            if (right - left != oldRight - oldLeft || bottom - top != oldBottom - oldTop)
+                requestFastScrollVisibilityCheck();
+        }
+    };
+
+    /**
+     * Tells our adapter when the fast scroller's handle is being dragged.
+     */
+    private final FastScrollHandleStateListener dragStateListener = new FastScrollHandleStateListener() {
+        @Override
+        public void onHandleStateChanged(FastScrollerHandleState newState) {
+            if (adapter != null) adapter.setFastScrollDragging(newState == FastScrollerHandleState.PRESSED);
+            if (performanceMonitor != null)
+                performanceMonitor.setFastScrollDragging(newState == FastScrollerHandleState.PRESSED);
+        }
+    };
+
+    /**
+     * Keeps our adapter's window of UIDs (if it's using one) around the visible items.
+     */
+    private final RecyclerView.OnScrollListener windowScrollListener = new RecyclerView.OnScrollListener() {
+        @Override
+        public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+            onAdapterWindowChanged();
+        }
+    };
 
     public RealmRecyclerView(Context context) {
         super(context);
@@ -50,7 +156,8 @@ public class RealmRecyclerView extends FrameLayout {
 
         // Get views.
         recyclerView = (RecyclerView) findViewById(R.id.rrv_recycler_view);
-        fastScroller = (FastScroller) findViewById(R.id.rrv_fast_scroller);
+        fastScrollerView = (FastScroller) findViewById(R.id.rrv_fast_scroller);
+        fastScroller = fastScrollerView;
         emptyContentContainer = (ViewStub) findViewById(R.id.rrv_empty_content_container);
 
         // Read attributes and set things up.
@@ -62,6 +169,18 @@ public class RealmRecyclerView extends FrameLayout {
         initFastScroller(ta);
         // RecyclerView padding.
         initRVPadding(ta);
+        // Cheap binding while scrolling fast.
+        setCheapBindVelocity(ta.getInt(R.styleable.RealmRecyclerView_cheapBindVelocity, 0));
+        // Row height cache.
+        setRowHeightCacheMode(RowHeightCacheMode.values()[ta.getInt(R.styleable.RealmRecyclerView_rowHeightCache, 0)]);
+        // Pausing updates while detached.
+        pauseUpdatesWhenDetached = ta.getBoolean(R.styleable.RealmRecyclerView_pauseUpdatesWhenDetached, true);
+        // Animating bulk changes.
+        maxAnimatedRows = ta.getInt(R.styleable.RealmRecyclerView_maxAnimatedRows, DEFAULT_MAX_ANIMATED_ROWS);
+        maxAnimatedRanges = ta.getInt(R.styleable.RealmRecyclerView_maxAnimatedRanges, DEFAULT_MAX_ANIMATED_RANGES);
+        // Adaptive prefetching.
+        setAdaptivePrefetch(ta.getBoolean(R.styleable.RealmRecyclerView_adaptivePrefetch, false));
+        setPerformanceMonitoring(ta.getBoolean(R.styleable.RealmRecyclerView_performanceMonitoring, false));
         ta.recycle();
 
         // Inflate empty view if present.
@@ -70,27 +189,63 @@ public class RealmRecyclerView extends FrameLayout {
             emptyContentContainer.inflate();
         }
 
-        // Set LinearLayoutManager, override the onLayoutChildren() method.
-        recyclerView.setLayoutManager(new LinearLayoutManager(getContext(), LinearLayoutManager.VERTICAL, false) {
+        // Set the default LinearLayoutManager.
+        defaultLayoutManager = new LinearLayoutManager(getContext(), LinearLayoutManager.VERTICAL, false) {
+            /*
+             * When we're caching row heights, we use them to compute the scroll offset/range/extent instead of the
+             * estimates that LinearLayoutManager would make (which assume all rows are the same height). Both the
+             * system scrollbar and the fast scroller use these values.
+             */
             @Override
-            public void onLayoutChildren(RecyclerView.Recycler recycler, RecyclerView.State state) {
-                super.onLayoutChildren(recycler, state);
-                if (!fastScrollEnabled) return;
-
-                final int firstVisibleItemPosition = findFirstVisibleItemPosition();
-                if (firstVisibleItemPosition != 0) {
-                    // Hide the fast scroller if not initialized, or no items are shown.
-                    if (firstVisibleItemPosition == -1) fastScroller.setVisibility(View.GONE);
-                    return;
-                }
-                final int lastVisibleItemPosition = findLastVisibleItemPosition();
-                int itemsShown = lastVisibleItemPosition - firstVisibleItemPosition + 1;
-                // Hide fast scroller if all items are visible in the viewport currently.
-                fastScroller.setVisibility(adapter != null && adapter.getItemCount() > itemsShown
-                        ? View.VISIBLE : View.GONE);
+            public int computeVerticalScrollOffset(RecyclerView.State state) {
+                if (!isRowHeightIndexUsable(this)) return super.computeVerticalScrollOffset(state);
+                View first = getChildAt(0);
+                long offset = getPaddingTop() + rowHeightIndex.getOffsetOf(getPosition(first))
+                        - RowHeightIndex.getChildTop(this, first);
+                long maxOffset = getPaddingTop() + rowHeightIndex.getTotalHeight() + getPaddingBottom() - getHeight();
+                return (int) Math.max(0, Math.min(offset, maxOffset));
+            }
+
+            @Override
+            public int computeVerticalScrollRange(RecyclerView.State state) {
+                if (!isRowHeightIndexUsable(this)) return super.computeVerticalScrollRange(state);
+                return (int) Math.max(getHeight(),
+                        getPaddingTop() + rowHeightIndex.getTotalHeight() + getPaddingBottom());
             }
-        });
+
+            @Override
+            public int computeVerticalScrollExtent(RecyclerView.State state) {
+                if (!isRowHeightIndexUsable(this)) return super.computeVerticalScrollExtent(state);
+                return getHeight();
+            }
+        };
+        recyclerView.setLayoutManager(defaultLayoutManager);
         recyclerView.setHasFixedSize(true);
+        recyclerView.addOnScrollListener(windowScrollListener);
+        recyclerView.addOnLayoutChangeListener(viewportSizeListener);
+    }
+
+    /**
+     * Tell our adapter which items are visible so that it can move its window of UIDs and create row models, if it's
+     * using them.
+     */
+    final void onAdapterWindowChanged() {
+        if (adapter == null || !adapter.needsVisibleRange()) return;
+        RecyclerView.LayoutManager lm = recyclerView.getLayoutManager();
+        adapter.onVisibleRangeChanged(LayoutManagers.findFirstVisibleItemPosition(lm),
+                LayoutManagers.findLastVisibleItemPosition(lm));
+    }
+
+    /**
+     * Check whether the row height index exists and can be used. Records the heights of the currently laid out rows as
+     * a side effect.
+     * @param lm Our layout manager.
+     * @return True if the row height index should be used.
+     */
+    private boolean isRowHeightIndexUsable(RecyclerView.LayoutManager lm) {
+        if (rowHeightIndex == null || lm.getChildCount() == 0) return false;
+        rowHeightIndex.recordChildren(lm);
+        return rowHeightIndex.isReady();
     }
 
     private void initTouchHelper(TypedArray ta) {
@@ -109,6 +264,8 @@ public class RealmRecyclerView extends FrameLayout {
                 FastScroller.DEFAULT_HANDLE_HIDE_DELAY));
         fastScroller.setUseBubble(ta.getBoolean(R.styleable.RealmRecyclerView_useFastScrollBubble, false));
         fastScroller.setRecyclerView(recyclerView);
+        fastScroller.setDragStateListener(dragStateListener);
+        setUseCanvasFastScroller(ta.getBoolean(R.styleable.RealmRecyclerView_canvasFastScroller, false));
     }
 
     private void initRVPadding(TypedArray ta) {
@@ -124,6 +281,45 @@ public class RealmRecyclerView extends FrameLayout {
                 paddingBottom > -1 ? paddingBottom : padding);
     }
 
+    /**
+     * Check whether the fast scroller should be shown after the next layout pass. This should only be called when the
+     * item count or the size of the viewport changes, or when the layout manager or the adapter is replaced, since
+     * nothing else can change whether all of the items fit in the viewport.
+     */
+    private void requestFastScrollVisibilityCheck() {
+        if (!fastScrollEnabled || fastScrollVisibilityCheckPending) return;
+        fastScrollVisibilityCheckPending = true;
+        recyclerView.getViewTreeObserver().addOnGlobalLayoutListener(fastScrollVisibilityListener);
+    }
+
+    /**
+     * Hide the fast scroller if all of the items fit in the viewport, or if there aren't any; otherwise show it.
+     */
+    private void updateFastScrollVisibility() {
+        if (!fastScrollEnabled) return;
+        RecyclerView.LayoutManager lm = recyclerView.getLayoutManager();
+
+        final int firstVisibleItemPosition = LayoutManagers.findFirstVisibleItemPosition(lm);
+        if (firstVisibleItemPosition != 0) {
+            // Hide the fast scroller if not initialized, or no items are shown.
+            if (firstVisibleItemPosition == -1) fastScroller.setShown(false);
+            return;
+        }
+        final int lastVisibleItemPosition = LayoutManagers.findLastVisibleItemPosition(lm);
+        int itemsShown = lastVisibleItemPosition - firstVisibleItemPosition + 1;
+        // Hide fast scroller if all items are visible in the viewport currently.
+        fastScroller.setShown(adapter != null && adapter.getItemCount() > itemsShown);
+    }
+
+    /**
+     * Get the row height index which the fast scroller should use. Row heights are only recorded by our default layout
+     * manager, which has one item per row.
+     */
+    private RowHeightIndex getFastScrollRowHeightIndex() {
+        return defaultLayoutManager != null && recyclerView.getLayoutManager() == defaultLayoutManager
+                ? rowHeightIndex : null;
+    }
+
     private void updateEmptyContentContainerVisibility(RecyclerView.Adapter adapter) {
         if (emptyViewId == 0) return;
         emptyContentContainer.setVisibility(adapter != null && adapter.getItemCount() == 0 ? View.VISIBLE : View.GONE);
@@ -138,13 +334,25 @@ public class RealmRecyclerView extends FrameLayout {
      * @param adapter {@link RealmRecyclerViewAdapter}.
      */
     public final void setAdapter(final RealmRecyclerViewAdapter adapter) {
+        if (this.adapter != null) {
+            this.adapter.setFastScrollDragging(false);
+            this.adapter.setScrollingFast(false);
+            this.adapter.setDetached(false);
+            this.adapter.setRowTimer(null);
+        }
         this.adapter = adapter;
         recyclerView.setAdapter(adapter);
 
         touchHelperCallback.setListener(adapter);
+        if (rowHeightIndex != null) rowHeightIndex.setAdapter(adapter);
+        if (bubbleTextLoader != null) bubbleTextLoader.setAdapter(adapter);
+        if (preInflater != null) preInflater.setAdapter(adapter);
+        if (stickyHeaderDecoration != null) stickyHeaderDecoration.setAdapter(adapter);
 
         if (adapter != null) {
             adapter.setRealmRecyclerView(this);
+            adapter.setRowTimer(rowTimer);
+            adapter.setDetached(pauseUpdatesWhenDetached && !isAttachedToWindow());
             adapter.registerAdapterDataObserver(
                     new RecyclerView.AdapterDataObserver() {
                         @Override
@@ -178,12 +386,19 @@ public class RealmRecyclerView extends FrameLayout {
                         }
 
                         private void update() {
+                            if (bubbleTextLoader != null) bubbleTextLoader.invalidate();
                             updateEmptyContentContainerVisibility(adapter);
+                            if (adapter.getItemCount() != lastItemCount) {
+                                lastItemCount = adapter.getItemCount();
+                                requestFastScrollVisibilityCheck();
+                            }
                         }
                     }
             );
         }
         updateEmptyContentContainerVisibility(adapter);
+        lastItemCount = adapter != null ? adapter.getItemCount() : -1;
+        requestFastScrollVisibilityCheck();
     }
 
     /**
@@ -253,7 +468,8 @@ public class RealmRecyclerView extends FrameLayout {
     public final void setFastScroll(boolean enabled) {
         this.fastScrollEnabled = enabled;
         recyclerView.setVerticalScrollBarEnabled(!enabled);
-        fastScroller.setVisibility(enabled ? VISIBLE : GONE);
+        fastScroller.setShown(enabled);
+        requestFastScrollVisibilityCheck();
     }
 
     /**
@@ -318,16 +534,393 @@ public class RealmRecyclerView extends FrameLayout {
      */
     @SuppressWarnings("unused")
     public final void setBubbleTextProvider(BubbleTextProvider bubbleTextProvider) {
+        this.bubbleTextProvider = bubbleTextProvider;
         fastScroller.setBubbleTextProvider(bubbleTextProvider);
     }
 
+    /**
+     * Set the async bubble text provider to use. If set, this is used instead of any {@link BubbleTextProvider}, and
+     * the bubble text is computed on a background thread so that slow lookups don't stall dragging the handle.
+     * @param asyncBubbleTextProvider Async bubble text provider, or null to go back to using the {@link
+     *                                BubbleTextProvider}.
+     */
+    @SuppressWarnings("unused")
+    public final void setAsyncBubbleTextProvider(AsyncBubbleTextProvider asyncBubbleTextProvider) {
+        if (bubbleTextLoader != null) bubbleTextLoader.invalidate();
+        if (asyncBubbleTextProvider == null) bubbleTextLoader = null;
+        else {
+            bubbleTextLoader = new AsyncBubbleTextLoader(asyncBubbleTextProvider);
+            bubbleTextLoader.setAdapter(adapter);
+        }
+        fastScroller.setBubbleTextLoader(bubbleTextLoader);
+    }
+
     /**
      * Set the fast scroll handle state listener to use.
      * @param handleStateListener Fast scroll handle state listener.
      */
     @SuppressWarnings("unused")
     public final void setFastScrollHandleStateListener(FastScrollHandleStateListener handleStateListener) {
+        this.handleStateListener = handleStateListener;
+        fastScroller.setHandleStateListener(handleStateListener);
+    }
+
+    /**
+     * Get whether the fast scroller is drawn directly onto the {@code RecyclerView}'s canvas.
+     * @return Whether the canvas-drawn fast scroller is being used.
+     */
+    public final boolean getUseCanvasFastScroller() {
+        return fastScroller instanceof FastScrollerDecoration;
+    }
+
+    /**
+     * Set whether to draw the fast scroller directly onto the {@code RecyclerView}'s canvas (as an item decoration)
+     * instead of using views. The two look and behave the same, but the canvas-drawn one doesn't change any view
+     * properties as the list scrolls and doesn't allocate animators when the handle or bubble show and hide, so it's
+     * cheaper. False by default.
+     * @param useCanvas Whether to use the canvas-drawn fast scroller.
+     */
+    @SuppressWarnings("unused")
+    public final void setUseCanvasFastScroller(boolean useCanvas) {
+        if (useCanvas == getUseCanvasFastScroller()) return;
+
+        FastScrollRenderer old = fastScroller;
+        old.setShown(false);
+        old.setRecyclerView(null);
+        old.setDragStateListener(null);
+
+        fastScroller = useCanvas ? new FastScrollerDecoration(getContext()) : fastScrollerView;
+        fastScroller.setAutoHideHandle(old.getAutoHideHandle());
+        fastScroller.setAutoHideDelay(old.getAutoHideDelay());
+        fastScroller.setUseBubble(old.getUseBubble());
+        fastScroller.setBubbleTextProvider(bubbleTextProvider);
+        fastScroller.setBubbleTextLoader(bubbleTextLoader);
         fastScroller.setHandleStateListener(handleStateListener);
+        fastScroller.setDragStateListener(dragStateListener);
+        fastScroller.setRowHeightIndex(getFastScrollRowHeightIndex());
+        fastScroller.setRecyclerView(recyclerView);
+        fastScroller.setShown(fastScrollEnabled);
+    }
+
+    /**
+     * Create {@code count} view holders of type {@code viewType} ahead of time, so that they're ready by the time
+     * they're needed. They're created using the adapter's {@code createViewHolder()} and put into the RecyclerView's
+     * {@code RecycledViewPool}, so the first scroll into that view type doesn't have to inflate its layouts then.
+     * <p/>
+     * By default, the view holders are created on the UI thread, one per message so that it isn't blocked for long. If
+     * the adapter's {@link RealmRecyclerViewAdapter#canPreInflateOffMainThread(int)} returns true for {@code viewType},
+     * they're created on a worker thread instead, which means that the adapter's {@code onCreateViewHolder()} runs on
+     * that thread. It must then inflate using {@link RealmRecyclerViewAdapter#getInflater()} (which returns a clone of
+     * the adapter's inflater on the worker thread; {@code LayoutInflater}s aren't thread-safe), and it must not read
+     * the adapter's items, touch other views or state which the UI thread uses, or create anything which needs a {@code
+     * Looper}. Inflating and finding views within the new layout is fine. If a layout can't be inflated off of the UI
+     * thread after all, the rest of its view holders are created on the UI thread.
+     * <p/>
+     * If the adapter is changed, pre-inflation is done again for the new adapter.
+     * @param viewType View type to create view holders for.
+     * @param count    Number of view holders of that type to keep ready.
+     */
+    @SuppressWarnings("unused")
+    public final void preInflate(int viewType, int count) {
+        if (preInflater == null) {
+            preInflater = new ViewHolderPreInflater(recyclerView);
+            preInflater.setAdapter(adapter);
+        }
+        preInflater.preInflate(viewType, count);
+    }
+
+    /**
+     * Set the provider to use to draw sticky section headers, or null to not draw any. Headers are drawn by an {@code
+     * ItemDecoration}, so the adapter doesn't need any extra view types for them.
+     * <p/>
+     * Section boundaries are indexed once and then kept up to date using the adapter's change notifications, so the
+     * provider's {@link StickyHeaderProvider#getSectionKey(io.realm.RealmModel) getSectionKey()} is only called for
+     * items which change, not for every item on every frame.
+     * <p/>
+     * Sticky headers assume one item per row, so they can't be used with a {@code GridLayoutManager} or {@code
+     * StaggeredGridLayoutManager}.
+     * @param provider Sticky header provider.
+     * @throws IllegalStateException If {@code provider} isn't null and a grid layout manager is set.
+     */
+    @SuppressWarnings("unused")
+    public final void setStickyHeaderProvider(StickyHeaderProvider provider) {
+        if (provider != null && LayoutManagers.isGrid(recyclerView.getLayoutManager()))
+            throw new IllegalStateException("Sticky headers can't be used with grid layout managers.");
+        if (stickyHeaderDecoration != null) {
+            recyclerView.removeItemDecoration(stickyHeaderDecoration);
+            stickyHeaderDecoration.setAdapter(null);
+            stickyHeaderDecoration = null;
+        }
+        if (provider == null) return;
+
+        stickyHeaderDecoration = new StickyHeaderDecoration(provider, recyclerView);
+        stickyHeaderDecoration.setAdapter(adapter);
+        // Add it first so that it's drawn beneath the canvas fast scroller, if it's being used.
+        recyclerView.addItemDecoration(stickyHeaderDecoration, 0);
+    }
+
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        if (adapter != null) adapter.setDetached(false);
+        if (performanceMonitor != null) performanceMonitor.attach(getContext());
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        if (adapter != null && pauseUpdatesWhenDetached) adapter.setDetached(true);
+        if (performanceMonitor != null) performanceMonitor.detach();
+    }
+
+    /**
+     * Check whether the adapter's updates are paused while this RealmRecyclerView is detached from its window.
+     * @return Whether updates are paused while detached.
+     */
+    public final boolean getPauseUpdatesWhenDetached() {
+        return pauseUpdatesWhenDetached;
+    }
+
+    /**
+     * Set whether the adapter should stop reacting to changes while this RealmRecyclerView is detached from its window,
+     * catching up on all of them at once with a single diff when it's reattached. True by default.
+     * @param pauseUpdatesWhenDetached Whether to pause updates while detached.
+     */
+    @SuppressWarnings("unused")
+    public final void setPauseUpdatesWhenDetached(boolean pauseUpdatesWhenDetached) {
+        this.pauseUpdatesWhenDetached = pauseUpdatesWhenDetached;
+        if (adapter != null) adapter.setDetached(pauseUpdatesWhenDetached && !isAttachedToWindow());
+    }
+
+    /**
+     * Get the maximum number of changed rows which a diff can have and still be animated.
+     * @return Maximum number of animated rows, or 0 if there's no limit.
+     */
+    @SuppressWarnings("unused")
+    public final int getMaxAnimatedRows() {
+        return maxAnimatedRows;
+    }
+
+    /**
+     * Get the maximum number of ranges which a diff's changes can be notified in and still be animated.
+     * @return Maximum number of animated ranges, or 0 if there's no limit.
+     */
+    @SuppressWarnings("unused")
+    public final int getMaxAnimatedRanges() {
+        return maxAnimatedRanges;
+    }
+
+    /**
+     * Set the limits above which the changes from a diff are applied without item animations, all in one frame, rather
+     * than each row being animated. 200 rows and 30 ranges by default. These are ignored if an {@link
+     * ItemAnimationPolicy} has been set.
+     * @param maxRows   Maximum number of inserted, removed, or changed rows to animate. If <= 0, there's no limit.
+     * @param maxRanges Maximum number of ranges to animate. If <= 0, there's no limit.
+     */
+    @SuppressWarnings("unused")
+    public final void setMaxAnimatedChanges(int maxRows, int maxRanges) {
+        this.maxAnimatedRows = Math.max(0, maxRows);
+        this.maxAnimatedRanges = Math.max(0, maxRanges);
+    }
+
+    /**
+     * Set the policy which decides whether the changes from each diff are animated, replacing the limits set using
+     * {@link #setMaxAnimatedChanges(int, int)}.
+     * @param policy Item animation policy. If null, the limits are used again.
+     */
+    @SuppressWarnings("unused")
+    public final void setItemAnimationPolicy(ItemAnimationPolicy policy) {
+        this.itemAnimationPolicy = policy;
+    }
+
+    /**
+     * Called by our adapter right before it notifies us of the changes from a diff. If they shouldn't be animated, the
+     * {@code ItemAnimator} is removed until they've been laid out.
+     * @param changedRows Number of rows which were inserted, removed, or changed.
+     * @param rangeCount  Number of ranges which the changes are notified in.
+     */
+    final void onBeforeItemChanges(int changedRows, int rangeCount) {
+        if (suspendedItemAnimator != null) return;
+        RecyclerView.ItemAnimator animator = recyclerView.getItemAnimator();
+        if (animator == null) return;
+
+        boolean animate = itemAnimationPolicy != null
+                ? itemAnimationPolicy.shouldAnimate(changedRows, rangeCount)
+                : (maxAnimatedRows <= 0 || changedRows <= maxAnimatedRows)
+                && (maxAnimatedRanges <= 0 || rangeCount <= maxAnimatedRanges);
+        if (animate) return;
+
+        animator.endAnimations();
+        suspendedItemAnimator = animator;
+        recyclerView.setItemAnimator(null);
+        recyclerView.getViewTreeObserver().addOnGlobalLayoutListener(restoreItemAnimatorListener);
+    }
+
+    /**
+     * Check whether prefetching and view caching are tuned based on measured create and bind times.
+     * @return Whether adaptive prefetching is enabled.
+     */
+    @SuppressWarnings("unused")
+    public final boolean getAdaptivePrefetch() {
+        return prefetchController != null;
+    }
+
+    /**
+     * Set whether to measure how long each view type takes to create and bind, and use that (along with the scroll
+     * velocity) to tune the RecyclerView's item view cache size, its pool's per-type limits, and its layout manager's
+     * initial prefetch count. Expensive rows are then prepared earlier and kept around longer, while cheap ones are
+     * left at RecyclerView's defaults. False by default.
+     * <p/>
+     * This uses the RecyclerView's {@code ViewCacheExtension} to measure create times, so don't enable it if you set
+     * your own.
+     * @param enabled Whether to enable adaptive prefetching.
+     */
+    @SuppressWarnings("unused")
+    public final void setAdaptivePrefetch(boolean enabled) {
+        if (enabled == (prefetchController != null)) return;
+        if (enabled) {
+            prefetchController = new PrefetchController(recyclerView);
+            recyclerView.addOnScrollListener(prefetchController);
+        } else {
+            recyclerView.removeOnScrollListener(prefetchController);
+            prefetchController.reset();
+            prefetchController = null;
+        }
+        updateRowTimer();
+    }
+
+    /**
+     * Check whether create and bind times and frame times are being recorded.
+     * @return Whether performance monitoring is enabled.
+     */
+    @SuppressWarnings("unused")
+    public final boolean getPerformanceMonitoring() {
+        return performanceMonitor != null;
+    }
+
+    /**
+     * Set whether to record how long rows of each view type take to create and bind, and how long frames take while
+     * the list is being dragged, flung, or fast scrolled. Use {@link #getPerformanceSnapshot()} to read the results.
+     * False by default; nothing is measured while it's disabled.
+     * <p/>
+     * Frame times come from {@code FrameMetrics} on Nougat and later, if this view is in an Activity; otherwise they're
+     * estimated from the time between {@code Choreographer} frame callbacks. Like {@link
+     * #setAdaptivePrefetch(boolean)}, this uses the RecyclerView's {@code ViewCacheExtension} to measure create times.
+     * @param enabled Whether to enable performance monitoring. Disabling it drops the results so far.
+     */
+    @SuppressWarnings("unused")
+    public final void setPerformanceMonitoring(boolean enabled) {
+        if (enabled == (performanceMonitor != null)) return;
+        if (enabled) {
+            performanceMonitor = new PerformanceMonitor(recyclerView);
+            recyclerView.addOnScrollListener(performanceMonitor);
+            if (isAttachedToWindow()) performanceMonitor.attach(getContext());
+        } else {
+            recyclerView.removeOnScrollListener(performanceMonitor);
+            performanceMonitor.detach();
+            performanceMonitor = null;
+        }
+        updateRowTimer();
+    }
+
+    /**
+     * Get the create and bind times and frame times recorded so far.
+     * @return Performance snapshot, or null if performance monitoring isn't enabled.
+     * @see #setPerformanceMonitoring(boolean)
+     */
+    @SuppressWarnings("unused")
+    public final PerformanceSnapshot getPerformanceSnapshot() {
+        return performanceMonitor != null ? performanceMonitor.snapshot() : null;
+    }
+
+    /**
+     * Drop the create and bind times and frame times recorded so far, for example after sending a snapshot somewhere.
+     */
+    @SuppressWarnings("unused")
+    public final void resetPerformanceStats() {
+        if (performanceMonitor != null) performanceMonitor.reset();
+    }
+
+    /**
+     * Create or drop our {@link RowTimer} depending on whether anything needs it, and give it to the adapter.
+     */
+    private void updateRowTimer() {
+        boolean needed = prefetchController != null || performanceMonitor != null;
+        if (needed && rowTimer == null) {
+            rowTimer = new RowTimer();
+            recyclerView.setViewCacheExtension(rowTimer.cacheExtension);
+        } else if (!needed && rowTimer != null) {
+            recyclerView.setViewCacheExtension(null);
+            rowTimer = null;
+        }
+        if (rowTimer != null) rowTimer.setListeners(prefetchController, performanceMonitor);
+        if (adapter != null) adapter.setRowTimer(rowTimer);
+    }
+
+    /**
+     * Get the scroll velocity above which rows are given a lightweight bind.
+     * @return Cheap bind velocity in dp per second, or 0 if disabled.
+     */
+    public final int getCheapBindVelocity() {
+        return cheapBindVelocity;
+    }
+
+    /**
+     * Set the scroll velocity above which rows will be bound using the adapter's {@code onBindLightweight()} method
+     * instead of being fully bound. Once scrolling drops below half of this velocity (or stops), the visible rows which
+     * were bound that way are fully re-bound. 0 (disabled) by default.
+     * @param dpPerSecond Velocity threshold in dp per second. If <= 0, cheap binding is disabled.
+     */
+    @SuppressWarnings("unused")
+    public final void setCheapBindVelocity(int dpPerSecond) {
+        this.cheapBindVelocity = Math.max(0, dpPerSecond);
+        float threshold = cheapBindVelocity * getResources().getDisplayMetrics().density;
+
+        if (cheapBindVelocity == 0) {
+            if (velocityMonitor != null) {
+                recyclerView.removeOnScrollListener(velocityMonitor);
+                velocityMonitor = null;
+            }
+            if (adapter != null) adapter.setScrollingFast(false);
+        } else if (velocityMonitor == null) {
+            velocityMonitor = new ScrollVelocityMonitor(threshold, new ScrollVelocityMonitor.Listener() {
+                @Override
+                public void onScrollSpeedChanged(boolean fast) {
+                    if (adapter != null) adapter.setScrollingFast(fast);
+                }
+            });
+            recyclerView.addOnScrollListener(velocityMonitor);
+        } else velocityMonitor.setThreshold(threshold);
+    }
+
+    /**
+     * Get the current row height cache mode.
+     * @return Row height cache mode.
+     */
+    public final RowHeightCacheMode getRowHeightCacheMode() {
+        return rowHeightCacheMode;
+    }
+
+    /**
+     * Set whether (and how) the measured heights of rows should be cached. When rows have different heights,
+     * caching them allows the fast scroller and the scrollbar to accurately map between scroll offsets and positions,
+     * rather than relying on estimates which assume that all rows are the same height. Mapping is O(log n) in the
+     * number of items. {@link RowHeightCacheMode#OFF} by default.
+     * @param mode Row height cache mode. If null, {@link RowHeightCacheMode#OFF} will be used.
+     */
+    @SuppressWarnings("unused")
+    public final void setRowHeightCacheMode(RowHeightCacheMode mode) {
+        if (mode == null) mode = RowHeightCacheMode.OFF;
+        if (mode == rowHeightCacheMode) return;
+        this.rowHeightCacheMode = mode;
+
+        if (rowHeightIndex != null) rowHeightIndex.setAdapter(null);
+        if (mode == RowHeightCacheMode.OFF) rowHeightIndex = null;
+        else {
+            rowHeightIndex = new RowHeightIndex(mode);
+            rowHeightIndex.setAdapter(adapter);
+        }
+        fastScroller.setRowHeightIndex(getFastScrollRowHeightIndex());
     }
 
     /**
@@ -365,11 +958,45 @@ public class RealmRecyclerView extends FrameLayout {
     }
 
     /**
-     * Get the {@code LinearLayoutManager} attached to the {@link RealmRecyclerView}.
-     * @return {@code LinearLayoutManager}.
+     * Get the {@code LinearLayoutManager} attached to the {@link RealmRecyclerView}. This is also how to get a {@code
+     * GridLayoutManager} which was passed to {@link #setLayoutManager(RecyclerView.LayoutManager)}.
+     * @return {@code LinearLayoutManager}, or null if a {@code StaggeredGridLayoutManager} is being used.
      */
     @SuppressWarnings("unused")
     public final LinearLayoutManager getLayoutManager() {
-        return (LinearLayoutManager) recyclerView.getLayoutManager();
+        RecyclerView.LayoutManager lm = recyclerView.getLayoutManager();
+        return lm instanceof LinearLayoutManager ? (LinearLayoutManager) lm : null;
+    }
+
+    /**
+     * Set the layout manager which lays out the rows. {@code LinearLayoutManager}, {@code GridLayoutManager}, and
+     * {@code StaggeredGridLayoutManager} are supported; the fast scroller maps its handle to the rows of a grid rather
+     * than to its items, so it moves at the same speed as the list does.
+     * <p/>
+     * Header and footer rows take up the full width of a grid. For a {@code GridLayoutManager}, this is done by
+     * wrapping its {@code SpanSizeLookup}, so set your own lookup (if any) before passing it here. For a {@code
+     * StaggeredGridLayoutManager}, header and footer rows are made full span when they're bound, which requires their
+     * views to be inflated with the RecyclerView as their parent.
+     * <p/>
+     * Row height caching (see {@link #setRowHeightCacheMode(RowHeightCacheMode)}) assumes one item per row, so it's
+     * only used with the default layout manager, a vertical {@code LinearLayoutManager}. Sticky headers (see {@link
+     * #setStickyHeaderProvider(StickyHeaderProvider)}) also assume one item per row, so they can't be used with grids.
+     * @param layoutManager Layout manager to use, or null to go back to the default one.
+     * @throws IllegalStateException If {@code layoutManager} is a grid and a sticky header provider is set.
+     */
+    @SuppressWarnings("unused")
+    public final void setLayoutManager(RecyclerView.LayoutManager layoutManager) {
+        if (layoutManager == null) layoutManager = defaultLayoutManager;
+        else if (!LayoutManagers.isSupported(layoutManager)) throw new IllegalArgumentException(
+                "Only LinearLayoutManager, GridLayoutManager, and StaggeredGridLayoutManager are supported.");
+        if (layoutManager == recyclerView.getLayoutManager()) return;
+        if (stickyHeaderDecoration != null && LayoutManagers.isGrid(layoutManager))
+            throw new IllegalStateException("Sticky headers can't be used with grid layout managers.");
+        if (layoutManager instanceof GridLayoutManager)
+            LayoutManagers.useFullSpanForExtraRows((GridLayoutManager) layoutManager, recyclerView);
+
+        recyclerView.setLayoutManager(layoutManager);
+        fastScroller.setRowHeightIndex(getFastScrollRowHeightIndex());
+        requestFastScrollVisibilityCheck();
     }
 }
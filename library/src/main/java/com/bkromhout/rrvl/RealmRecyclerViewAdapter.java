@@ -3,17 +3,23 @@ package com.bkromhout.rrvl;
 import android.content.Context;
 import android.graphics.Canvas;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.LruCache;
 import android.view.LayoutInflater;
+import android.view.ViewGroup;
 import androidx.annotation.CallSuper;
 import androidx.recyclerview.widget.RecyclerView;
+import androidx.recyclerview.widget.StaggeredGridLayoutManager;
 import difflib.Delta;
 import difflib.DiffUtils;
-import difflib.Patch;
 import io.realm.RealmChangeListener;
+import io.realm.RealmConfiguration;
 import io.realm.RealmModel;
 import io.realm.RealmResults;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 
@@ -25,152 +31,1864 @@ public abstract class RealmRecyclerViewAdapter<T extends RealmModel & UIDModel,
 
     private static final String SEL_POSITIONS_KEY = "rrvl-state-key-selected-positions";
     private static final List<Long> EMPTY_LIST = new ArrayList<>(0);
+    /**
+     * Returned by {@link #findWindowShift()} if the window's items couldn't be found.
+     */
+    private static final int NO_SHIFT = Integer.MIN_VALUE;
+    /**
+     * How many of the first items in the window to look for when figuring out how far the window has shifted.
+     */
+    private static final int WINDOW_ANCHORS = 3;
+    /**
+     * Default value for {@link #swapDebounce}, in milliseconds.
+     */
+    private static final long DEFAULT_SWAP_DEBOUNCE = 100L;
+    /**
+     * Offset basis and prime for the 64-bit FNV-1a hash used by {@link #toStableId(Object)}.
+     */
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+    /**
+     * How many row models we keep.
+     */
+    private static final int ROW_MODEL_CACHE_SIZE = 512;
+    /**
+     * Default for {@link #rowModelMargin}.
+     */
+    private static final int DEFAULT_ROW_MODEL_MARGIN = 20;
+    /**
+     * Payload passed to {@code notifyItemChanged()} when a row which was given a cheap bind (by {@link
+     * #onBindPlaceholder(RecyclerView.ViewHolder, int)} or {@link #onBindLightweight(RecyclerView.ViewHolder, int)})
+     * should now be fully bound. If you override {@link
+     * #onBindViewHolder(RecyclerView.ViewHolder, int, List)}, make sure to fully bind rows when you receive this.
+     */
+    public static final Object REBIND_PAYLOAD = new Object();
+
+    private RealmRecyclerView rrv = null;
+    private RealmChangeListener<RealmResults<T>> changeListener;
+    private boolean shouldNotifyOfSingleItemMoves = true;
+    private SelectionChangeListener selectionChangeListener;
+    private boolean fastScrollDragging = false;
+    private boolean scrollingFast = false;
+    private final HashSet<VH> cheaplyBoundHolders = new HashSet<>();
+    /**
+     * Re-binds cheaply bound rows, unless we've gone back to binding them cheaply since this was posted.
+     */
+    private final Runnable rebindRunnable = new Runnable() {
+        @Override
+        public void run() {
+            if (!scrollingFast && !fastScrollDragging) rebindCheaplyBoundHolders();
+        }
+    };
+    private int windowRadius = 0;
+    /**
+     * Position of the item whose UID is at index 0 of {@link #ids}. Always 0 unless {@link #windowRadius} is set.
+     */
+    private int windowStart = 0;
+    /**
+     * The size of {@link #realmResults} when we last updated {@link #ids} in windowed mode.
+     */
+    private int windowedTotalSize = 0;
+    /**
+     * Non-null while {@link #ids} is being built lazily. Until it finishes, {@link #ids} is empty.
+     */
+    private LazySnapshotBuilder<T> snapshotBuilder = null;
+    private long swapDebounce = DEFAULT_SWAP_DEBOUNCE;
+    private Handler swapHandler = null;
+    private PendingSwap pendingSwap = null;
+    /**
+     * Non-null while the adapter is getting its items from a {@link BackgroundQuery}.
+     */
+    private BackgroundSnapshotter<T> backgroundSnapshotter = null;
+    /**
+     * The latest detached snapshot from {@link #backgroundSnapshotter}.
+     */
+    private List<T> backgroundItems = null;
+    private boolean updatesPaused = false;
+    private boolean detached = false;
+    /**
+     * Whether we got a change notification (or background snapshot) while updates were paused.
+     */
+    private boolean missedUpdate = false;
+    /**
+     * The number of items {@link #realmResults} had when updates were paused (or when we were bound with listening
+     * deferred), which we keep reporting until we're applying changes again, since the RecyclerView isn't told about
+     * changes in the meantime. -1 when we're applying changes.
+     */
+    private int frozenCount = -1;
+    /**
+     * The latest background snapshot we got while updates were paused.
+     */
+    private List<T> missedBackgroundItems = null;
+    private List missedBackgroundIds = null;
+    private boolean shareSnapshots = false;
+    /**
+     * Non-null while we're attached to a {@link SharedSnapshot} instead of listening to {@link #realmResults}
+     * ourselves.
+     */
+    private SharedSnapshot<T> sharedSnapshot = null;
+    /**
+     * Mutations registered using {@link #expectMove(int, int)} and friends, which we'll try to apply directly the next
+     * time {@link #realmResults} changes.
+     */
+    private final ArrayList<ExpectedMutation> expectedMutations = new ArrayList<>();
+    /**
+     * True if we were bound by a {@link CarouselPool} while its parent was scrolling, so we haven't started listening
+     * for changes yet.
+     */
+    private boolean listeningDeferred = false;
+    /**
+     * The size of {@link #realmResults} when we were bound by a {@link CarouselPool}.
+     */
+    private int nestedBoundSize = 0;
+    private RowModelLoader<T, ?> rowModelLoader = null;
+    private LruCache<Object, CachedRowModel> rowModels = null;
+    /**
+     * Incremented whenever the items may have changed, so that we know which row models are out of date.
+     */
+    private int rowModelVersion = 0;
+    /**
+     * UIDs whose row models have been requested for the current {@link #rowModelVersion}.
+     */
+    private final HashSet<Object> requestedRowModels = new HashSet<>();
+    private int rowModelMargin = DEFAULT_ROW_MODEL_MARGIN;
+    private Handler rowModelHandler = null;
+    private int firstVisiblePos = RecyclerView.NO_POSITION;
+    private int lastVisiblePos = RecyclerView.NO_POSITION;
+    private RowTimer rowTimer = null;
+    private int headerCount = 0;
+    private int footerCount = 0;
+    /**
+     * Whether the header and footer rows are currently part of the adapter's items. They're hidden while there are no
+     * items from {@link #realmResults}, so that the {@link RealmRecyclerView}'s empty view can still be shown.
+     */
+    private boolean extraRowsShown = false;
+    /**
+     * Non-null while an {@link UpdateMetricsListener} is set.
+     */
+    private UpdateMetricsRecorder updateMetrics = null;
+    /**
+     * True while we're notifying that items need to be redrawn only because their selection state changed.
+     */
+    private boolean notifyingSelectionChange = false;
+    /**
+     * A clone of {@link #inflater} for the pre-inflation worker thread to use, since a {@code LayoutInflater} mustn't
+     * be used by two threads at once.
+     */
+    private final LayoutInflater preInflateInflater;
+    /**
+     * Set to {@link #preInflateInflater} on the pre-inflation worker thread while it's creating a view holder.
+     */
+    private final ThreadLocal<LayoutInflater> workerInflater = new ThreadLocal<>();
+
+    protected LayoutInflater inflater;
+    protected RealmResults<T> realmResults;
+    protected List ids;
+    protected HashSet<Integer> selectedPositions;
+    protected int lastSelectedPos = -1;
+
+    public RealmRecyclerViewAdapter(Context context, RealmResults<T> realmResults) {
+        if (context == null) throw new IllegalArgumentException("Context cannot be null");
+        this.changeListener = getRealmChangeListener();
+        this.inflater = LayoutInflater.from(context);
+        this.preInflateInflater = inflater.cloneInContext(context);
+
+        selectedPositions = new HashSet<>();
+        setHasStableIds(true);
+        updateRealmResults(realmResults);
+    }
+
+    /**
+     * Get the UIDs of the items in {@link #realmResults}. In windowed mode, this moves the window to cover the items
+     * within {@link #windowRadius} of the visible items (the same range {@link #onVisibleRangeChanged(int, int)} keeps
+     * it at), and only gets the UIDs in the window.
+     * @return List of UIDs.
+     */
+    private List getIdsOfRealmResults() {
+        if (realmResults == null) return EMPTY_LIST;
+        int size = realmResults.size();
+        if (windowRadius > 0) {
+            int lastItem = Math.max(0, size - 1);
+            // If we don't know which items are visible yet, act as if the one in the middle of the window is.
+            int first = firstVisiblePos >= 0 ? firstVisiblePos - getHeaderOffset() : windowStart + windowRadius;
+            int last = lastVisiblePos >= 0 ? lastVisiblePos - getHeaderOffset() : first;
+            first = Math.max(0, Math.min(first, lastItem));
+            last = Math.max(first, Math.min(last, lastItem));
+            windowStart = getWindowStartFor(first);
+            return getIdsOfRealmResults(windowStart, getWindowEndFor(last, size));
+        }
+        return getIdsOfRealmResults(0, size);
+    }
+
+    /**
+     * Get the position the window should start at if {@code firstVisible} is the first visible item.
+     * @param firstVisible Position of the first visible item, not counting header rows.
+     * @return Window start.
+     */
+    private int getWindowStartFor(int firstVisible) {
+        return Math.max(0, firstVisible - windowRadius);
+    }
+
+    /**
+     * Get the position the window should end at (exclusive) if {@code lastVisible} is the last visible item.
+     * @param lastVisible Position of the last visible item, not counting header rows.
+     * @param size        Number of items in {@link #realmResults}.
+     * @return Window end.
+     */
+    private int getWindowEndFor(int lastVisible, int size) {
+        return Math.min(size, lastVisible + 1 + windowRadius);
+    }
+
+    /**
+     * Get the UIDs of the items in {@link #realmResults} from {@code start} (inclusive) to {@code end} (exclusive).
+     * @param start Start position.
+     * @param end   End position.
+     * @return List of UIDs.
+     */
+    private List getIdsOfRealmResults(int start, int end) {
+        if (realmResults == null || end <= start) return EMPTY_LIST;
+        Tracing.begin(Tracing.SNAPSHOT);
+        try {
+            // Get/Update IDs.
+            List ids = new ArrayList(end - start);
+            for (int i = start; i < end; i++)
+                //noinspection unchecked
+                ids.add(realmResults.get(i).getUID());
+            Tracing.counter(Tracing.LIST_SIZE_COUNTER, realmResults.size());
+            return ids;
+        } finally {
+            Tracing.end();
+        }
+    }
+
+    /**
+     * Diff two lists of UIDs, in a trace section.
+     * @param oldIds Old UIDs.
+     * @param newIds New UIDs.
+     * @return Deltas from {@code oldIds} to {@code newIds}.
+     */
+    static List<Delta> diffIds(List oldIds, List newIds) {
+        Tracing.begin(Tracing.DIFF);
+        try {
+            //noinspection unchecked
+            List<Delta> deltas = DiffUtils.diff(oldIds, newIds).getDeltas();
+            Tracing.counter(Tracing.DELTA_COUNT_COUNTER, deltas.size());
+            return deltas;
+        } finally {
+            Tracing.end();
+        }
+    }
+
+    /**
+     * Replace {@link #ids} with a new snapshot of the UIDs in {@link #realmResults}.
+     * <p/>
+     * In windowed mode the window is small, so we just read its UIDs now. Otherwise we read them lazily using a {@link
+     * LazySnapshotBuilder} so that we don't hold up the first frame for large lists, leaving {@link #ids} empty until
+     * it's done. {@link #getUIDAt(int)} returns null in the meantime, and if {@link #realmResults} changes before it's
+     * done we fall back to {@code notifyDataSetChanged()}.
+     */
+    private void resetIds() {
+        if (snapshotBuilder != null) {
+            snapshotBuilder.cancel();
+            snapshotBuilder = null;
+        }
+        windowedTotalSize = realmResults != null ? realmResults.size() : 0;
+        // Background queries keep their own snapshots.
+        if (backgroundSnapshotter != null) return;
+        if (sharedSnapshot != null) {
+            ids = sharedSnapshot.getIds();
+            return;
+        }
+
+        if (windowRadius > 0 || realmResults == null || realmResults.isEmpty()) {
+            ids = getIdsOfRealmResults();
+            return;
+        }
+
+        ids = EMPTY_LIST;
+        snapshotBuilder = new LazySnapshotBuilder<>(realmResults, new LazySnapshotBuilder.Callback() {
+            @Override
+            public void onSnapshotBuilt(List builtIds) {
+                snapshotBuilder = null;
+                ids = builtIds;
+            }
+        });
+        snapshotBuilder.start();
+    }
+
+    /**
+     * Start listening for changes to {@link #realmResults}, either directly or using a {@link SharedSnapshot}.
+     */
+    private void startListening() {
+        if (realmResults == null) return;
+        if (shareSnapshots && windowRadius == 0) sharedSnapshot = SharedSnapshot.attach(realmResults, this);
+        else if (changeListener != null) realmResults.addChangeListener(changeListener);
+    }
+
+    /**
+     * Stop listening for changes to {@link #realmResults}.
+     */
+    private void stopListening() {
+        if (sharedSnapshot != null) {
+            sharedSnapshot.detach(this);
+            sharedSnapshot = null;
+        } else if (changeListener != null && realmResults != null) realmResults.removeChangeListener(changeListener);
+    }
+
+    private RealmChangeListener<RealmResults<T>> getRealmChangeListener() {
+        return new RealmChangeListener<RealmResults<T>>() {
+            @Override
+            public void onChange(RealmResults<T> newResults) {
+                // If updates are paused, just remember that we'll need to catch up once they're resumed.
+                if (isUpdatePaused()) {
+                    noteMissedUpdate();
+                    return;
+                }
+                onRealmResultsChanged();
+                invalidateRowModels();
+            }
+        };
+    }
+
+    /**
+     * Remember that something changed while updates were paused, so that we catch up once they're resumed.
+     */
+    final void noteMissedUpdate() {
+        missedUpdate = true;
+        expectedMutations.clear();
+        // A snapshot which is still being built would end up with a mix of UIDs from before and after the change, so
+        // drop it. We'll notify that everything changed when we catch up.
+        if (snapshotBuilder != null) {
+            snapshotBuilder.cancel();
+            snapshotBuilder = null;
+            ids = EMPTY_LIST;
+        }
+    }
+
+    /**
+     * Drop any mutations registered using {@link #expectMove(int, int)} and friends without checking them.
+     */
+    final void clearExpectedMutations() {
+        expectedMutations.clear();
+    }
+
+    /**
+     * Update {@link #ids} and send notifications for the changes to {@link #realmResults}.
+     */
+    private void onRealmResultsChanged() {
+        clearSelections();
+        if (updateMetrics != null) updateMetrics.begin();
+
+        // If we were told what to expect, see if that's what happened, in which case we can skip diffing.
+        if (!expectedMutations.isEmpty()) {
+            boolean applied = snapshotBuilder == null && windowRadius == 0 && applyExpectedMutations();
+            expectedMutations.clear();
+            if (applied) return;
+        }
+
+        // If we were still building the snapshot, it's out of date now, so we have to start over.
+        if (snapshotBuilder != null) {
+            resetIds();
+            notifyAllChanged();
+            return;
+        }
+
+        if (windowRadius > 0) {
+            onWindowedRealmResultsChanged();
+            return;
+        }
+
+        if (ids != null && !ids.isEmpty()) {
+            List newIds = getIdsOfRealmResults();
+            if (updateMetrics != null) updateMetrics.snapshotTaken();
+
+            // If the list is now empty, just notify the recyclerView of the change.
+            if (newIds.isEmpty()) {
+                ids = newIds;
+                notifyAllChanged();
+                return;
+            }
+
+            List<Delta> deltas = diffIds(ids, newIds);
+            if (updateMetrics != null) updateMetrics.diffed();
+            ids = newIds;
+
+            dispatchDeltas(deltas, 0, shouldNotifyOfSingleItemMoves);
+        } else {
+            notifyAllChanged();
+            resetIds();
+        }
+    }
+
+    /**
+     * Tell the adapter that the item at {@code fromPosition} is about to be moved to {@code toPosition}. Call this
+     * right before committing the write which moves it; when the adapter is notified of the change, it will check that
+     * the item did move, and if so it will just notify that it moved instead of diffing the whole list.
+     * <p/>
+     * Only use this (and {@link #expectRemoval(int)} and {@link #expectInsertion(int, Object)}) for writes which are
+     * committed on the UI thread, since the check only looks at the size of the list and the positions around the
+     * ones which were touched. If the check fails, the adapter just diffs the list as usual. Expected mutations are
+     * ignored when using windowed, shared, or background snapshots.
+     * @param fromPosition Current position of the item.
+     * @param toPosition   Position the item will be moved to.
+     */
+    @SuppressWarnings("unused")
+    public final void expectMove(int fromPosition, int toPosition) {
+        int offset = getHeaderOffset();
+        expectedMutations.add(new ExpectedMutation(ExpectedMutation.MOVE, fromPosition - offset, toPosition - offset,
+                null));
+    }
+
+    /**
+     * Tell the adapter that the item at {@code position} is about to be removed. Call this right before committing the
+     * write which removes it.
+     * @param position Current position of the item.
+     * @see #expectMove(int, int)
+     */
+    @SuppressWarnings("unused")
+    public final void expectRemoval(int position) {
+        int dataPosition = position - getHeaderOffset();
+        expectedMutations.add(new ExpectedMutation(ExpectedMutation.REMOVAL, dataPosition, dataPosition, null));
+    }
+
+    /**
+     * Tell the adapter that an item with the UID {@code uid} is about to be inserted at {@code position}. Call this
+     * right before committing the write which inserts it.
+     * @param position Position the item will be at.
+     * @param uid      The item's {@link UIDModel#getUID() UID}.
+     * @see #expectMove(int, int)
+     */
+    @SuppressWarnings("unused")
+    public final void expectInsertion(int position, Object uid) {
+        int dataPosition = position - getHeaderOffset();
+        expectedMutations.add(new ExpectedMutation(ExpectedMutation.INSERTION, dataPosition, dataPosition, uid));
+    }
+
+    /**
+     * Apply {@link #expectedMutations} to a copy of {@link #ids}, and check the result against {@link #realmResults}.
+     * If they match, replace {@link #ids} and send notifications for the mutations.
+     * @return True if the expected mutations were applied.
+     */
+    private boolean applyExpectedMutations() {
+        if (ids == null || realmResults == null) return false;
+        List newIds = new ArrayList(ids);
+        ArrayList<Integer> touched = new ArrayList<>(expectedMutations.size() * 2);
+        for (ExpectedMutation m : expectedMutations) {
+            int sizeAfter = newIds.size() + (m.type == ExpectedMutation.INSERTION ? 1 : 0);
+            if (m.from < 0 || m.to < 0 || m.from >= sizeAfter || m.to >= sizeAfter) return false;
+            if (m.type == ExpectedMutation.REMOVAL) newIds.remove(m.from);
+            else //noinspection unchecked
+                newIds.add(m.to, m.type == ExpectedMutation.MOVE ? newIds.remove(m.from) : m.uid);
+            touched.add(m.from);
+            touched.add(m.to);
+        }
+
+        // Check that the size matches, and that the UIDs around the positions we touched match.
+        int size = realmResults.size();
+        if (newIds.size() != size) return false;
+        for (int position : touched) {
+            for (int i = Math.max(0, position - 1); i <= Math.min(size - 1, position + 1); i++)
+                if (!newIds.get(i).equals(realmResults.get(i).getUID())) return false;
+        }
+
+        ids = newIds;
+        if (updateMetrics != null) updateMetrics.dispatching();
+        Tracing.begin(Tracing.DISPATCH);
+        try {
+            int offset = getHeaderOffset();
+            for (ExpectedMutation m : expectedMutations) {
+                if (m.type == ExpectedMutation.MOVE) {
+                    if (!shouldNotifyOfSingleItemMoves || m.from == m.to) continue;
+                    notifyItemMoved(offset + m.from, offset + m.to);
+                    notifyItemChanged(offset + m.to);
+                } else if (m.type == ExpectedMutation.REMOVAL) notifyItemRemoved(offset + m.from);
+                else notifyItemInserted(offset + m.to);
+            }
+            updateExtraRowsShown();
+        } finally {
+            Tracing.end();
+        }
+        if (updateMetrics != null) updateMetrics.dispatched(UpdatePath.EXPECTED, expectedMutations.size(), size);
+        return true;
+    }
+
+    /**
+     * A mutation which we've been told to expect.
+     */
+    private static final class ExpectedMutation {
+        static final int MOVE = 0;
+        static final int REMOVAL = 1;
+        static final int INSERTION = 2;
+
+        final int type;
+        final int from;
+        final int to;
+        final Object uid;
+
+        ExpectedMutation(int type, int from, int to, Object uid) {
+            this.type = type;
+            this.from = from;
+            this.to = to;
+            this.uid = uid;
+        }
+    }
+
+    /**
+     * Send notifications for the given {@code deltas}, skipping single item moves if we're in the middle of a drag.
+     * @param deltas Deltas from diffing the old and new UIDs.
+     * @param offset Position of the first item in the lists which were diffed, not counting header rows.
+     */
+    final void dispatchDeltas(List<Delta> deltas, int offset) {
+        dispatchDeltas(deltas, offset, shouldNotifyOfSingleItemMoves);
+    }
+
+    /**
+     * Send notifications for the given {@code deltas}.
+     * @param deltas            Deltas from diffing the old and new UIDs.
+     * @param offset            Position of the first item in the lists which were diffed, not counting header rows.
+     * @param notifySingleMoves Whether to notify if the deltas show that a single item moved.
+     */
+    final void dispatchDeltas(List<Delta> deltas, int offset, boolean notifySingleMoves) {
+        dispatchDeltas(deltas, offset, notifySingleMoves, true);
+    }
+
+    /**
+     * Send notifications for the given {@code deltas}.
+     * @param deltas              Deltas from diffing the old and new UIDs.
+     * @param offset              Position of the first item in the lists which were diffed, not counting header rows.
+     * @param notifySingleMoves   Whether to notify if the deltas show that a single item moved.
+     * @param announceItemChanges Whether to tell the {@link RealmRecyclerView} about the changes before notifying.
+     *                            False if the caller has already done so for a larger update which includes them.
+     */
+    private void dispatchDeltas(List<Delta> deltas, int offset, boolean notifySingleMoves,
+                                boolean announceItemChanges) {
+        if (updateMetrics != null) updateMetrics.dispatching();
+        // If the notification was for a different object/table (we'll have no deltas), don't do anything.
+        if (deltas.isEmpty()) {
+            if (updateMetrics != null) updateMetrics.dispatched(UpdatePath.NONE, 0, getDataCount());
+            return;
+        }
+        offset += getHeaderOffset();
+        boolean singleItemMoved;
+        Tracing.begin(Tracing.DISPATCH);
+        try {
+            if (announceItemChanges && rrv != null) rrv.onBeforeItemChanges(countChangedRows(deltas), deltas.size());
+
+            /*
+             * When we know we're currently swiping or dragging, we do a few more checks before calling the notify
+             * methods, because in those cases the real RecyclerView handles many animations without us needing to tell
+             * it what to do, and notifying it on top of that messes things up. Specifically, we don't explicitly notify
+             * it of single item moves.
+             */
+            singleItemMoved = deltas.size() == 2 && areDeltasFromMove(deltas.get(0), deltas.get(1));
+            if (!singleItemMoved) {
+                // Loop through deltas backwards and send notifications for them.
+                for (int i = deltas.size() - 1; i >= 0; i--) {
+                    Delta d = deltas.get(i);
+                    if (d.getType() == Delta.TYPE.INSERT) {
+                        notifyItemRangeInserted(offset + d.getOriginal().getPosition(), d.getRevised().size());
+                    } else if (d.getType() == Delta.TYPE.DELETE) {
+                        notifyItemRangeRemoved(offset + d.getOriginal().getPosition(), d.getOriginal().size());
+                    } else {
+                        notifyItemRangeChanged(offset + d.getRevised().getPosition(), d.getRevised().size());
+                    }
+                }
+            } else if (notifySingleMoves) {
+                // Notify that a single item moved.
+                Delta insert = deltas.get(0).getType() == Delta.TYPE.INSERT ? deltas.get(0) : deltas.get(1);
+                Delta delete = deltas.get(0).getType() == Delta.TYPE.DELETE ? deltas.get(0) : deltas.get(1);
+                notifyItemMoved(offset + delete.getOriginal().getPosition(),
+                        offset + insert.getRevised().getPosition());
+                notifyItemChanged(offset + insert.getRevised().getPosition());
+            }
+            updateExtraRowsShown();
+        } finally {
+            Tracing.end();
+        }
+        if (updateMetrics != null) updateMetrics.dispatched(singleItemMoved ? UpdatePath.MOVE : UpdatePath.RANGES,
+                deltas.size(), getDataCount());
+    }
+
+    /**
+     * Handle a change to {@link #realmResults} when we're only keeping a window of UIDs around the visible items.
+     * <p/>
+     * We first figure out how far the window's items have shifted by looking for one of them near where it used to be,
+     * and report the region above the window as a coarse change (plus however many items were inserted or removed
+     * there). Then we diff the window itself and send precise notifications for it, and finally report the region
+     * below the window as a coarse change. If we can't find the window's items, we just reset everything.
+     */
+    private void onWindowedRealmResultsChanged() {
+        int oldSize = windowedTotalSize;
+        int newSize = realmResults.size();
+        windowedTotalSize = newSize;
+
+        int shift = ids.isEmpty() || newSize == 0 ? NO_SHIFT : findWindowShift();
+        if (shift == NO_SHIFT) {
+            ids = getIdsOfRealmResults();
+            notifyAllChanged();
+            return;
+        }
+        // The window can't start above the list. Any items before the anchor which were removed from inside the window
+        // are left to the window's diff, rather than being reported as rows removed above it.
+        shift = Math.max(shift, -windowStart);
+        int oldStart = windowStart;
+        int newStart = oldStart + shift;
+
+        // Snapshot and diff the window first. If items were added, we grow the window a bit to catch items inserted at
+        // its end. Only this is timed, not the notifications for the regions around it.
+        int oldLen = ids.size();
+        int grow = Math.min(Math.max(0, newSize - oldSize - shift), windowRadius);
+        int newLen = Math.max(0, Math.min(oldLen + grow, newSize - newStart));
+        if (updateMetrics != null) updateMetrics.begin();
+        List newIds = getIdsOfRealmResults(newStart, newStart + newLen);
+        if (updateMetrics != null) updateMetrics.snapshotTaken();
+        List<Delta> deltas = diffIds(ids, newIds);
+        if (updateMetrics != null) updateMetrics.diffed();
+
+        // Rows outside of the window are off screen, so only the number inserted or removed around it matters there.
+        if (rrv != null) rrv.onBeforeItemChanges(Math.abs(newSize - oldSize) + countChangedRows(deltas),
+                deltas.size() + 2);
+
+        // Above the window.
+        int offset = getHeaderOffset();
+        if (shift > 0) notifyItemRangeInserted(offset, shift);
+        else if (shift < 0) notifyItemRangeRemoved(offset, -shift);
+        int aboveChanged = newStart - Math.max(0, shift);
+        if (aboveChanged > 0) notifyItemRangeChanged(offset + Math.max(0, shift), aboveChanged);
+
+        // The window itself.
+        ids = newIds;
+        windowStart = newStart;
+        dispatchDeltas(deltas, newStart, shouldNotifyOfSingleItemMoves, false);
+
+        // Below the window.
+        int countAfterWindow = oldSize + shift + (newLen - oldLen);
+        int tailStart = newStart + newLen;
+        if (newSize > countAfterWindow) notifyItemRangeInserted(offset + countAfterWindow, newSize - countAfterWindow);
+        else if (newSize < countAfterWindow) notifyItemRangeRemoved(offset + newSize, countAfterWindow - newSize);
+        int tailChanged = Math.min(newSize, countAfterWindow) - tailStart;
+        if (tailChanged > 0) notifyItemRangeChanged(offset + tailStart, tailChanged);
+    }
+
+    /**
+     * Look for one of the first few items in the window near its old position in the updated {@link #realmResults} to
+     * determine how far the window has shifted. Looks at most {@link #windowRadius} positions in either direction.
+     * @return The number of positions the window has shifted by, or {@link #NO_SHIFT} if it couldn't be found.
+     */
+    private int findWindowShift() {
+        int size = realmResults.size();
+        for (int anchor = 0; anchor < Math.min(ids.size(), WINDOW_ANCHORS); anchor++) {
+            Object uid = ids.get(anchor);
+            int oldPos = windowStart + anchor;
+            for (int distance = 0; distance <= windowRadius; distance++) {
+                if (oldPos + distance < size && uid.equals(realmResults.get(oldPos + distance).getUID()))
+                    return distance;
+                if (distance > 0 && oldPos - distance >= 0 && oldPos - distance < size
+                        && uid.equals(realmResults.get(oldPos - distance).getUID())) return -distance;
+            }
+        }
+        return NO_SHIFT;
+    }
+
+    /**
+     * Called as the {@link RealmRecyclerView} scrolls so that, in windowed mode, we can slide the window of UIDs along
+     * with the visible items. Only the UIDs of items which enter the window are read; the rest are reused.
+     * @param firstVisible Position of the first visible item.
+     * @param lastVisible  Position of the last visible item.
+     */
+    final void onVisibleRangeChanged(int firstVisible, int lastVisible) {
+        firstVisiblePos = firstVisible;
+        lastVisiblePos = lastVisible;
+        requestRowModels();
+        if (windowRadius <= 0 || realmResults == null || firstVisible < 0) return;
+        firstVisible = Math.max(0, firstVisible - getHeaderOffset());
+        lastVisible -= getHeaderOffset();
+        int size = realmResults.size();
+        int windowEnd = windowStart + ids.size();
+        // Don't bother moving the window until the visible items get reasonably close to one of its edges.
+        int slack = windowRadius / 2;
+        if ((firstVisible - windowStart >= slack || windowStart == 0)
+                && (windowEnd - lastVisible - 1 >= slack || windowEnd >= size)) return;
+
+        int newStart = getWindowStartFor(firstVisible);
+        int newEnd = getWindowEndFor(lastVisible, size);
+        List newIds = new ArrayList(Math.max(0, newEnd - newStart));
+        for (int i = newStart; i < newEnd; i++) {
+            //noinspection unchecked
+            newIds.add(i >= windowStart && i < windowEnd ? ids.get(i - windowStart) : realmResults.get(i).getUID());
+        }
+        ids = newIds;
+        windowStart = newStart;
+    }
+
+    /**
+     * Check whether we need to be told which items are visible.
+     * @return True if we're using a window or row models.
+     */
+    final boolean needsVisibleRange() {
+        return windowRadius > 0 || rowModelLoader != null;
+    }
+
+    /**
+     * Get the current windowed snapshot radius.
+     * @return Number of items on either side of the visible items whose UIDs are kept, or 0 if the whole list is.
+     */
+    @SuppressWarnings("unused")
+    public final int getWindowRadius() {
+        return windowRadius;
+    }
+
+    /**
+     * Set the adapter to only keep the UIDs of the items within {@code radius} positions of the visible items, rather
+     * than those of every item in {@link #realmResults}. This is meant for very large lists, where snapshotting and
+     * diffing every item on each change would take too long.
+     * <p/>
+     * Changes within the window get the usual precise notifications. Changes outside of it are reported as coarse
+     * range changes, which is fine since those items aren't on screen. The window moves along as the list scrolls.
+     * <p/>
+     * 0 (disabled) by default. A good radius is a few screens' worth of items.
+     * @param radius Number of items on either side of the visible items to keep UIDs for, or 0 to keep them all.
+     */
+    @SuppressWarnings("unused")
+    public final void setWindowRadius(int radius) {
+        radius = Math.max(0, radius);
+        if (radius == windowRadius) return;
+        // Windowed snapshots aren't shared, so we might need to switch between listening directly and sharing.
+        stopListening();
+        windowRadius = radius;
+        windowStart = 0;
+        startListening();
+        resetIds();
+        if (rrv != null) rrv.onAdapterWindowChanged();
+    }
+
+    /**
+     * Check {@code delta1} and {@code delta2} to determine if, together, they represent a situation where an item has
+     * simply moved to somewhere else in the list.
+     * @param delta1 A delta.
+     * @param delta2 Another delta.
+     * @return True if the deltas represent an item having moved, otherwise false.
+     */
+    private boolean areDeltasFromMove(Delta delta1, Delta delta2) {
+        // Check delta types, make sure we have one insert and one delete.
+        if (!((delta1.getType() == Delta.TYPE.INSERT && delta2.getType() == Delta.TYPE.DELETE)
+                || (delta1.getType() == Delta.TYPE.DELETE && delta2.getType() == Delta.TYPE.INSERT))) return false;
+        // Figure out which is which.
+        Delta insert = delta1.getType() == Delta.TYPE.INSERT ? delta1 : delta2;
+        Delta delete = delta2.getType() == Delta.TYPE.DELETE ? delta2 : delta1;
+        // Make sure they only affect one "line".
+        if (delete.getOriginal().size() != 1 || insert.getRevised().size() != 1) return false;
+        // And make sure that that "line" has the same content.
+        return delete.getOriginal().getLines().get(0).equals(insert.getRevised().getLines().get(0));
+    }
+
+    /**
+     * Count the rows which are inserted, removed, or changed by {@code deltas}.
+     * @param deltas Deltas.
+     * @return Number of rows.
+     */
+    private static int countChangedRows(List<Delta> deltas) {
+        int changedRows = 0;
+        for (Delta d : deltas) changedRows += Math.max(d.getOriginal().size(), d.getRevised().size());
+        return changedRows;
+    }
+
+    /**
+     * Get the UID of the item at {@code position} from our snapshot of the UIDs, without touching Realm.
+     * @param position Adapter position of an item.
+     * @return UID of the item, or null if {@code position} isn't the position of an item in {@link #realmResults}.
+     */
+    final Object getUIDAt(int position) {
+        return getSnapshotUIDAt(position - getHeaderOffset());
+    }
+
+    /**
+     * Get the UID of the item at {@code dataPosition} from our snapshot of the UIDs.
+     * @param dataPosition Position of an item, not counting header rows.
+     * @return UID of the item, or null if it isn't in our snapshot.
+     */
+    Object getSnapshotUIDAt(int dataPosition) {
+        int index = dataPosition - windowStart;
+        return ids != null && index >= 0 && index < ids.size() ? ids.get(index) : null;
+    }
+
+    /**
+     * Like {@link #getUIDAt(int)}, but reads the UID from {@link #realmResults} if it isn't in our snapshot (which can
+     * happen in windowed mode).
+     * @param position Adapter position of an item.
+     * @return UID of the item, or null if {@code position} isn't the position of an item in {@link #realmResults}.
+     */
+    final Object loadUIDAt(int position) {
+        Object uid = getUIDAt(position);
+        if (uid == null && isDataPosition(position)) {
+            T item = getItem(position);
+            if (item != null) uid = item.getUID();
+        }
+        return uid;
+    }
+
+    /**
+     * Get the {@code LayoutInflater} to inflate item layouts with in {@code onCreateViewHolder()}. This is {@link
+     * #inflater}, unless the view holder is being pre-inflated on a worker thread (see {@link
+     * RealmRecyclerView#preInflate(int, int)}), in which case it's a separate clone of it.
+     * @return Layout inflater for the current thread.
+     */
+    protected final LayoutInflater getInflater() {
+        LayoutInflater worker = workerInflater.get();
+        return worker != null ? worker : inflater;
+    }
+
+    /**
+     * Check whether view holders of type {@code viewType} can be pre-inflated on a worker thread (see {@link
+     * RealmRecyclerView#preInflate(int, int)}). If this returns false, which it does by default, they're pre-inflated
+     * on the UI thread instead, one at a time.
+     * <p/>
+     * Only return true if {@code onCreateViewHolder()} is safe to call off of the UI thread for {@code viewType}: it
+     * must inflate using {@link #getInflater()} (never {@link #inflater}, which the UI thread may be using at the same
+     * time), must not touch the adapter's items or any other state shared with the UI thread, and must not create
+     * anything which needs a {@code Looper}, such as a {@code Handler}.
+     * @param viewType View type.
+     * @return True if view holders of type {@code viewType} can be created on a worker thread.
+     */
+    protected boolean canPreInflateOffMainThread(int viewType) {
+        return false;
+    }
+
+    /**
+     * Create a view holder on the pre-inflation worker thread, with {@link #getInflater()} returning our clone of
+     * {@link #inflater}.
+     * @param parent   Parent to create the view holder for.
+     * @param viewType View type.
+     * @return New view holder.
+     */
+    final VH createViewHolderOffMainThread(ViewGroup parent, int viewType) {
+        workerInflater.set(preInflateInflater);
+        try {
+            return createViewHolder(parent, viewType);
+        } finally {
+            workerInflater.remove();
+        }
+    }
+
+    final void setRealmRecyclerView(RealmRecyclerView rrv) {
+        this.rrv = rrv;
+    }
+
+    /**
+     * Start dragging the given {@code viewHolder}. Will do nothing if drag and drop isn't enabled or if the adapter
+     * isn't attached to a {@link RealmRecyclerView}.
+     * @param viewHolder ViewHolder to start dragging.
+     */
+    @SuppressWarnings("unused")
+    protected final void startDragging(RecyclerView.ViewHolder viewHolder) {
+        if (rrv != null) rrv.startDragging(viewHolder);
+    }
+
+    /**
+     * Called when the fast scroller's handle is pressed or released.
+     * @param dragging Whether the fast scroller's handle is being dragged.
+     */
+    final void setFastScrollDragging(boolean dragging) {
+        if (fastScrollDragging == dragging) return;
+        fastScrollDragging = dragging;
+        if (!dragging && !scrollingFast) postRebindCheaplyBoundHolders();
+    }
+
+    /**
+     * Check whether the fast scroller's handle is currently being dragged.
+     * @return True if the fast scroller's handle is being dragged.
+     */
+    @SuppressWarnings("unused")
+    protected final boolean isFastScrollDragging() {
+        return fastScrollDragging;
+    }
+
+    /**
+     * Called when the {@link RealmRecyclerView}'s scroll velocity crosses its cheap bind velocity threshold.
+     * @param fast Whether the view is currently scrolling faster than the threshold.
+     * @see RealmRecyclerView#setCheapBindVelocity(int)
+     */
+    final void setScrollingFast(boolean fast) {
+        if (scrollingFast == fast) return;
+        scrollingFast = fast;
+        if (!fast && !fastScrollDragging) postRebindCheaplyBoundHolders();
+    }
+
+    /**
+     * Check whether the {@link RealmRecyclerView} is currently scrolling faster than its cheap bind velocity threshold.
+     * @return True if scrolling fast.
+     */
+    @SuppressWarnings("unused")
+    protected final boolean isScrollingFast() {
+        return scrollingFast;
+    }
+
+    /**
+     * Re-bind the rows which were cheaply bound once the current frame's callbacks are done. We usually find out that
+     * we can stop binding cheaply from inside a RecyclerView scroll callback, where the notify methods aren't allowed.
+     */
+    private void postRebindCheaplyBoundHolders() {
+        if (cheaplyBoundHolders.isEmpty()) return;
+        if (rrv == null) {
+            rebindCheaplyBoundHolders();
+            return;
+        }
+        RecyclerView recyclerView = rrv.getRecyclerView();
+        recyclerView.removeCallbacks(rebindRunnable);
+        recyclerView.post(rebindRunnable);
+    }
+
+    /**
+     * Fully re-bind any rows which were cheaply bound and are still attached or cached. Rows which have since been
+     * recycled will be bound normally when they're next used.
+     */
+    private void rebindCheaplyBoundHolders() {
+        if (cheaplyBoundHolders.isEmpty()) return;
+        for (VH holder : cheaplyBoundHolders) {
+            int pos = holder.getAdapterPosition();
+            if (pos != RecyclerView.NO_POSITION) notifyItemChanged(pos, REBIND_PAYLOAD);
+        }
+        cheaplyBoundHolders.clear();
+    }
+
+    /**
+     * Called instead of {@link #onBindViewHolder(RecyclerView.ViewHolder, int)} while the fast scroller's handle is
+     * being dragged, since rows will usually only be on screen for a few milliseconds at that time. Override this to
+     * bind a cheap skeleton of the row (skipping things like image loading and building spans) and return true.
+     * <p/>
+     * Rows which were bound as placeholders will be fully bound once the handle is released; the ones which are visible
+     * at that point will be notified as changed with {@link #REBIND_PAYLOAD}.
+     * <p/>
+     * By default, this does nothing and returns false, meaning that rows will be fully bound even while dragging.
+     * @param holder   The ViewHolder to bind.
+     * @param position Position of the item.
+     * @return True if the row was bound as a placeholder, false if it should be fully bound instead.
+     */
+    @SuppressWarnings({"unused", "UnusedParameters"})
+    protected boolean onBindPlaceholder(VH holder, int position) {
+        return false;
+    }
+
+    /**
+     * Called instead of {@link #onBindViewHolder(RecyclerView.ViewHolder, int)} while the {@link RealmRecyclerView} is
+     * scrolling faster than its cheap bind velocity threshold (see {@link
+     * RealmRecyclerView#setCheapBindVelocity(int)}).
+     * Override this to bind a lightweight version of the row and return true.
+     * <p/>
+     * Rows which were bound this way will be fully bound once scrolling slows down or settles; the ones which are
+     * visible at that point will be notified as changed with {@link #REBIND_PAYLOAD}.
+     * <p/>
+     * By default, this does nothing and returns false, meaning that rows will be fully bound even while flinging.
+     * @param holder   The ViewHolder to bind.
+     * @param position Position of the item.
+     * @return True if the row was given a lightweight bind, false if it should be fully bound instead.
+     */
+    @SuppressWarnings({"unused", "UnusedParameters"})
+    protected boolean onBindLightweight(VH holder, int position) {
+        return false;
+    }
+
+    @Override
+    public void onBindViewHolder(VH holder, int position, List<Object> payloads) {
+        if (!isDataPosition(position)) {
+            // Header and footer rows span the whole width of a staggered grid.
+            ViewGroup.LayoutParams lp = holder.itemView.getLayoutParams();
+            if (lp instanceof StaggeredGridLayoutManager.LayoutParams)
+                ((StaggeredGridLayoutManager.LayoutParams) lp).setFullSpan(true);
+        }
+        if ((fastScrollDragging && onBindPlaceholder(holder, position))
+                || (scrollingFast && onBindLightweight(holder, position))) {
+            cheaplyBoundHolders.add(holder);
+            return;
+        }
+        cheaplyBoundHolders.remove(holder);
+        if (rowTimer == null) {
+            super.onBindViewHolder(holder, position, payloads);
+            return;
+        }
+        long start = System.nanoTime();
+        super.onBindViewHolder(holder, position, payloads);
+        rowTimer.onBound(holder, start, System.nanoTime());
+    }
+
+    final void setRowTimer(RowTimer rowTimer) {
+        this.rowTimer = rowTimer;
+    }
+
+    /**
+     * Called when a view created by this adapter has been recycled.
+     * <p/>
+     * If you override this method, be sure to call {@code super()}.
+     * @param holder The ViewHolder for the view being recycled.
+     */
+    @Override
+    @CallSuper
+    public void onViewRecycled(VH holder) {
+        super.onViewRecycled(holder);
+        cheaplyBoundHolders.remove(holder);
+    }
+
+    /**
+     * Get the number of items, including any header and footer rows. Use {@link #setHeaderCount(int)} and {@link
+     * #setFooterCount(int)} rather than overriding this to add extra rows.
+     * @return Number of items.
+     */
+    @Override
+    public int getItemCount() {
+        int dataCount = getDataCount();
+        return extraRowsShown ? headerCount + dataCount + footerCount : dataCount;
+    }
+
+    /**
+     * Get a stable ID for the item at {@code position}, derived from its {@link UIDModel#getUID() UID}. Stable IDs are
+     * turned on by default; call {@code setHasStableIds(false)} in your constructor if you don't want them.
+     * <p/>
+     * The UID is always taken from our snapshot, so no Realm read is needed. Integral UIDs are used as-is, and other
+     * UIDs are hashed to 64 bits, so UIDs must be unique across the whole list. Header and footer rows get IDs near
+     * {@code Long.MIN_VALUE} and {@code Long.MAX_VALUE}, respectively. Items whose UIDs aren't in our snapshot get
+     * {@code NO_ID} rather than having their UIDs read from Realm during layout. That's the case while the initial
+     * snapshot (or a shared one) is still being built, for items outside of the window in windowed mode, and for a
+     * nested adapter which hasn't started listening yet and had no cached snapshot.
+     * @param position Adapter position.
+     * @return Stable ID.
+     */
+    @Override
+    public long getItemId(int position) {
+        if (isHeaderPosition(position)) return Long.MIN_VALUE + position;
+        if (isFooterPosition(position)) return Long.MAX_VALUE - (position - headerCount - getDataCount());
+        Object uid = getUIDAt(position);
+        return uid != null ? toStableId(uid) : RecyclerView.NO_ID;
+    }
+
+    /**
+     * Mix {@code salt} into a stable ID, so that the same item can have different IDs in different parts of a list.
+     * @param id   Stable ID.
+     * @param salt Value to mix in.
+     * @return New stable ID.
+     */
+    static long mixStableId(long id, int salt) {
+        long hash = FNV_OFFSET_BASIS;
+        hash ^= id;
+        hash *= FNV_PRIME;
+        hash ^= salt;
+        hash *= FNV_PRIME;
+        return hash;
+    }
+
+    /**
+     * Convert a UID to a stable ID.
+     * @param uid UID.
+     * @return {@code uid} itself if it's an integral number, otherwise a 64-bit hash of it.
+     */
+    static long toStableId(Object uid) {
+        if (uid instanceof Long || uid instanceof Integer || uid instanceof Short || uid instanceof Byte)
+            return ((Number) uid).longValue();
+        String str = uid.toString();
+        long hash = FNV_OFFSET_BASIS;
+        for (int i = 0; i < str.length(); i++) {
+            hash ^= str.charAt(i);
+            hash *= FNV_PRIME;
+        }
+        return hash;
+    }
+
+    /**
+     * Get the number of items from {@link #realmResults} (or the background query), not including header and footer
+     * rows.
+     * @return Number of data items.
+     */
+    public final int getDataCount() {
+        return countItems();
+    }
+
+    /**
+     * Count the items from {@link #realmResults} (or the background query).
+     * @return Number of data items.
+     */
+    int countItems() {
+        if (backgroundItems != null) return backgroundItems.size();
+        if (frozenCount != -1) return frozenCount;
+        return realmResults != null ? realmResults.size() : 0;
+    }
+
+    /**
+     * Check whether we aren't applying changes to {@link #realmResults} right now, either because updates are paused or
+     * because listening is deferred.
+     * @return True if the item count should stay frozen.
+     */
+    private boolean isCountFrozen() {
+        return isUpdatePaused() || listeningDeferred;
+    }
+
+    /**
+     * If we aren't applying changes, start reporting the current number of items in {@link #realmResults} from {@link
+     * #countItems()} until we are again. Otherwise, go back to reporting the live number.
+     */
+    private void updateFrozenCount() {
+        frozenCount = isCountFrozen() && realmResults != null && realmResults.isValid() ? realmResults.size() : -1;
+    }
+
+    /**
+     * Get the item at {@code position}. Use this instead of reading {@link #realmResults} directly if you use {@link
+     * #setBackgroundQuery(RealmConfiguration, BackgroundQuery)} or have header rows.
+     * @param position Adapter position of the item.
+     * @return Item at {@code position}, or null if it's a header or footer row, or if updates are paused and the item
+     * has been removed since. If using a background query, this is a detached copy.
+     */
+    protected final T getItem(int position) {
+        return isDataPosition(position) ? getItemAt(position - getHeaderOffset()) : null;
+    }
+
+    /**
+     * Get the item at {@code dataPosition}.
+     * @param dataPosition Position of the item, not counting header rows.
+     * @return Item at {@code dataPosition}.
+     */
+    T getItemAt(int dataPosition) {
+        if (backgroundItems != null) return backgroundItems.get(dataPosition);
+        // While updates are paused we may still report items which have since been removed.
+        if (frozenCount != -1 && dataPosition >= realmResults.size()) return null;
+        return realmResults.get(dataPosition);
+    }
+
+    /**
+     * Get the number of header rows.
+     * @return Number of header rows.
+     */
+    public final int getHeaderCount() {
+        return headerCount;
+    }
+
+    /**
+     * Set the number of header rows to show before the items from {@link #realmResults}. Header rows (and footer rows)
+     * are only shown while there is at least one item from {@link #realmResults}.
+     * <p/>
+     * Use {@link #isHeaderPosition(int)} in {@link #getItemViewType(int)} to give header rows their own view types, and
+     * {@link #getItem(int)} or {@link #getDataPosition(int)} to get items for the other rows. Changes to {@link
+     * #realmResults} are notified at positions shifted by the number of header rows, so animations work as usual.
+     * @param headerCount Number of header rows.
+     */
+    @SuppressWarnings("unused")
+    public final void setHeaderCount(int headerCount) {
+        headerCount = Math.max(0, headerCount);
+        int old = this.headerCount;
+        this.headerCount = headerCount;
+        if (!extraRowsShown || old == headerCount) return;
+        if (headerCount > old) notifyItemRangeInserted(old, headerCount - old);
+        else notifyItemRangeRemoved(headerCount, old - headerCount);
+    }
+
+    /**
+     * Get the number of footer rows.
+     * @return Number of footer rows.
+     */
+    public final int getFooterCount() {
+        return footerCount;
+    }
+
+    /**
+     * Set the number of footer rows to show after the items from {@link #realmResults}.
+     * @param footerCount Number of footer rows.
+     * @see #setHeaderCount(int)
+     */
+    @SuppressWarnings("unused")
+    public final void setFooterCount(int footerCount) {
+        footerCount = Math.max(0, footerCount);
+        int old = this.footerCount;
+        this.footerCount = footerCount;
+        if (!extraRowsShown || old == footerCount) return;
+        int footerStart = headerCount + getDataCount();
+        if (footerCount > old) notifyItemRangeInserted(footerStart + old, footerCount - old);
+        else notifyItemRangeRemoved(footerStart + footerCount, old - footerCount);
+    }
+
+    /**
+     * Check whether {@code position} is the position of a header row.
+     * @param position Adapter position.
+     * @return True if {@code position} is a header row.
+     */
+    public final boolean isHeaderPosition(int position) {
+        return extraRowsShown && position >= 0 && position < headerCount;
+    }
+
+    /**
+     * Check whether {@code position} is the position of a footer row.
+     * @param position Adapter position.
+     * @return True if {@code position} is a footer row.
+     */
+    public final boolean isFooterPosition(int position) {
+        return extraRowsShown && position >= headerCount + getDataCount() && position < getItemCount();
+    }
+
+    /**
+     * Check whether {@code position} is the position of an item from {@link #realmResults}.
+     * @param position Adapter position.
+     * @return True if {@code position} is neither a header nor a footer row.
+     */
+    public final boolean isDataPosition(int position) {
+        int dataPosition = position - getHeaderOffset();
+        return dataPosition >= 0 && dataPosition < getDataCount();
+    }
+
+    /**
+     * Convert an adapter position to a position in {@link #realmResults}.
+     * @param position Adapter position.
+     * @return Position in {@link #realmResults}, or -1 if {@code position} is a header or footer row.
+     */
+    public final int getDataPosition(int position) {
+        return isDataPosition(position) ? position - getHeaderOffset() : -1;
+    }
+
+    /**
+     * Get the number of positions which the items from {@link #realmResults} are shifted by.
+     */
+    final int getHeaderOffset() {
+        return extraRowsShown ? headerCount : 0;
+    }
+
+    /**
+     * Call after sending notifications for changes to the items from {@link #realmResults}, to add or remove the header
+     * and footer rows if we've gone from having no items to some or vice versa.
+     */
+    private void updateExtraRowsShown() {
+        int dataCount = getDataCount();
+        boolean shown = dataCount > 0;
+        if (shown == extraRowsShown) return;
+        extraRowsShown = shown;
+        if (shown) {
+            if (headerCount > 0) notifyItemRangeInserted(0, headerCount);
+            if (footerCount > 0) notifyItemRangeInserted(headerCount + dataCount, footerCount);
+        } else if (headerCount + footerCount > 0) notifyItemRangeRemoved(0, headerCount + footerCount);
+    }
+
+    /**
+     * Call instead of {@code notifyDataSetChanged()} when everything may have changed.
+     */
+    final void notifyAllChanged() {
+        if (updateMetrics != null) updateMetrics.dispatching();
+        Tracing.begin(Tracing.DISPATCH);
+        try {
+            extraRowsShown = getDataCount() > 0;
+            notifyDataSetChanged();
+        } finally {
+            Tracing.end();
+        }
+        if (updateMetrics != null) updateMetrics.dispatched(UpdatePath.FULL_RESET, 0, getDataCount());
+    }
+
+    /**
+     * Update the RealmResults associated with the Adapter. Useful when the query has been changed. If the query does
+     * not change you might consider using the automaticUpdate feature.
+     * @param queryResults the new RealmResults coming from the new query.
+     */
+    @SuppressWarnings("WeakerAccess")
+    public void updateRealmResults(RealmResults<T> queryResults) {
+        cancelPendingSwap();
+        stopBackgroundQuery();
+        stopListening();
 
-    private RealmRecyclerView rrv = null;
-    private RealmChangeListener<RealmResults<T>> changeListener;
-    private boolean shouldNotifyOfSingleItemMoves = true;
-    private SelectionChangeListener selectionChangeListener;
+        realmResults = queryResults;
+        startListening();
+        missedUpdate = false;
+        updateFrozenCount();
 
-    protected LayoutInflater inflater;
-    protected RealmResults<T> realmResults;
-    protected List ids;
-    protected HashSet<Integer> selectedPositions;
-    protected int lastSelectedPos = -1;
+        selectedPositions.clear();
+        lastSelectedPos = -1;
+        windowStart = 0;
+        resetIds();
+        notifyAllChanged();
+        invalidateRowModels();
+    }
 
-    public RealmRecyclerViewAdapter(Context context, RealmResults<T> realmResults) {
-        if (context == null) throw new IllegalArgumentException("Context cannot be null");
-        this.changeListener = getRealmChangeListener();
-        this.inflater = LayoutInflater.from(context);
+    /**
+     * Swap the RealmResults associated with the Adapter for {@code queryResults}, animating the difference between them
+     * rather than redrawing everything like {@link #updateRealmResults(RealmResults)} does. Meant for things like
+     * search-as-you-type, where the query changes often but the results don't change all that much.
+     * <p/>
+     * The swap is debounced (see {@link #setSwapDebounce(long)}), and a swap which is still pending when this is called
+     * again is cancelled. {@code queryResults} may come from {@code findAllAsync()}, in which case the swap happens
+     * once they've loaded.
+     * <p/>
+     * If the adapter is in windowed mode, using a background query or shared snapshots, or hasn't finished
+     * snapshotting the current results yet, this falls back to {@link #updateRealmResults(RealmResults)} when the swap
+     * happens.
+     * @param queryResults The new RealmResults coming from the new query.
+     */
+    @SuppressWarnings("unused")
+    public final void swapRealmResults(RealmResults<T> queryResults) {
+        cancelPendingSwap();
+        if (swapHandler == null) swapHandler = new Handler(Looper.myLooper());
+        pendingSwap = new PendingSwap(queryResults);
+        if (swapDebounce > 0) swapHandler.postDelayed(pendingSwap, swapDebounce);
+        else pendingSwap.run();
+    }
 
-        selectedPositions = new HashSet<>();
-        updateRealmResults(realmResults);
+    /**
+     * Get how long {@link #swapRealmResults(RealmResults)} waits before swapping.
+     * @return Swap debounce time, in milliseconds.
+     */
+    @SuppressWarnings("unused")
+    public final long getSwapDebounce() {
+        return swapDebounce;
     }
 
-    private List getIdsOfRealmResults() {
-        if (realmResults == null || realmResults.size() == 0) return EMPTY_LIST;
+    /**
+     * Set how long {@link #swapRealmResults(RealmResults)} waits for another call before actually swapping. Default is
+     * 100ms.
+     * @param swapDebounce Swap debounce time, in milliseconds. 0 swaps right away.
+     */
+    @SuppressWarnings("unused")
+    public final void setSwapDebounce(long swapDebounce) {
+        this.swapDebounce = Math.max(0L, swapDebounce);
+    }
 
-        // Get/Update IDs.
-        List ids = new ArrayList(realmResults.size());
-        for (int i = 0; i < realmResults.size(); i++)
-            //noinspection unchecked
-            ids.add(realmResults.get(i).getUID());
+    private void cancelPendingSwap() {
+        if (pendingSwap == null) return;
+        pendingSwap.cancel();
+        pendingSwap = null;
+    }
+
+    /**
+     * Actually swap in the results from {@code swap}, diffing their UIDs against our current ones.
+     * @param swap The swap to apply.
+     */
+    private void applySwap(PendingSwap swap) {
+        swap.cancel();
+        pendingSwap = null;
+        RealmResults<T> queryResults = swap.results;
+        if (queryResults == null || !queryResults.isValid() || windowRadius > 0 || snapshotBuilder != null
+                || backgroundSnapshotter != null || sharedSnapshot != null) {
+            updateRealmResults(queryResults);
+            return;
+        }
+
+        // Redraw the selected items (at their current positions) before we clear the selection.
+        boolean hadSelection = !selectedPositions.isEmpty();
+        for (Integer position : selectedPositions) notifyItemChanged(position);
+        selectedPositions.clear();
+        lastSelectedPos = -1;
+
+        stopListening();
+        realmResults = queryResults;
+        startListening();
+        updateFrozenCount();
 
-        return ids;
+        if (updateMetrics != null) updateMetrics.begin();
+        List newIds = getIdsOfRealmResults(0, realmResults.size());
+        if (updateMetrics != null) updateMetrics.snapshotTaken();
+        List<Delta> deltas = diffIds(ids, newIds);
+        if (updateMetrics != null) updateMetrics.diffed();
+        ids = newIds;
+        windowedTotalSize = newIds.size();
+        dispatchDeltas(deltas, 0, true);
+        invalidateRowModels();
+
+        if (hadSelection && selectionChangeListener != null) selectionChangeListener.itemSelectionChanged();
     }
 
-    private RealmChangeListener<RealmResults<T>> getRealmChangeListener() {
-        return new RealmChangeListener<RealmResults<T>>() {
+    /**
+     * A swap which was requested using {@link #swapRealmResults(RealmResults)}. Runs once the debounce time has passed,
+     * then waits for the results to load if they haven't already.
+     */
+    private final class PendingSwap implements Runnable, RealmChangeListener<RealmResults<T>> {
+        private final RealmResults<T> results;
+        private boolean waitingForLoad = false;
+
+        PendingSwap(RealmResults<T> results) {
+            this.results = results;
+        }
+
+        @Override
+        public void run() {
+            if (results == null || results.isLoaded()) applySwap(this);
+            else {
+                waitingForLoad = true;
+                results.addChangeListener(this);
+            }
+        }
+
+        @Override
+        public void onChange(RealmResults<T> loadedResults) {
+            applySwap(this);
+        }
+
+        void cancel() {
+            swapHandler.removeCallbacks(this);
+            if (waitingForLoad) results.removeChangeListener(this);
+            waitingForLoad = false;
+        }
+    }
+
+    /**
+     * Run the adapter's query on a background thread instead of using RealmResults from the UI thread. The query is
+     * created and kept up to date on a looper thread managed by the adapter, and each time its results change, the
+     * adapter gets detached (unmanaged) copies of them along with the diff from the previous copies. So evaluating the
+     * query, reading UIDs, and diffing are all kept off of the UI thread, and binding never touches Realm.
+     * <p/>
+     * Since there's no UI thread RealmResults in this mode, {@link #realmResults} is null; use {@link #getItem(int)} in
+     * {@link #onBindViewHolder(RecyclerView.ViewHolder, int)} instead. Copying every item isn't free, so this is best
+     * suited to queries whose results are of a modest size but expensive to evaluate, sort, or diff.
+     * <p/>
+     * Calling {@link #updateRealmResults(RealmResults)} (or {@link #close()}) stops the background query.
+     * @param config Configuration to open the background thread's Realm instance with.
+     * @param query  Creates the query results on the background thread.
+     */
+    @SuppressWarnings("unused")
+    public final void setBackgroundQuery(RealmConfiguration config, BackgroundQuery<T> query) {
+        if (config == null || query == null) throw new IllegalArgumentException("config and query must not be null");
+        updateRealmResults(null);
+        backgroundSnapshotter = new BackgroundSnapshotter<>(config, query, new BackgroundSnapshotter.Callback<T>() {
             @Override
-            public void onChange(RealmResults<T> newResults) {
-                clearSelections();
+            public void onSnapshot(List<T> items, List newIds, List<Delta> deltas) {
+                onBackgroundSnapshot(items, newIds, deltas);
+            }
+        });
+        backgroundSnapshotter.start();
+    }
 
-                if (ids != null && !ids.isEmpty()) {
-                    List newIds = getIdsOfRealmResults();
+    private void stopBackgroundQuery() {
+        if (backgroundSnapshotter == null) return;
+        backgroundSnapshotter.stop();
+        backgroundSnapshotter = null;
+        backgroundItems = null;
+        missedBackgroundItems = null;
+        missedBackgroundIds = null;
+    }
 
-                    // If the list is now empty, just notify the recyclerView of the change.
-                    if (newIds.isEmpty()) {
-                        ids = newIds;
-                        notifyDataSetChanged();
-                        return;
-                    }
+    /**
+     * Create immutable row models for the visible items (plus {@link #getRowModelPrefetchMargin()} items on either
+     * side) on a background thread, so that {@link #onBindViewHolder(RecyclerView.ViewHolder, int)} can use {@link
+     * #getRowModel(int)} to read plain fields instead of reading Realm objects and formatting their contents.
+     * <p/>
+     * The background thread runs {@code query} on its own Realm instance and finds items by their UIDs, so {@code
+     * query} should match the adapter's own results (or at least contain all of their items). Row models are cached by
+     * UID, and each time the items change, the visible ones are mapped again; rows whose models change are re-bound
+     * with {@link #REBIND_PAYLOAD}. Until a row's model is ready, {@link #getRowModel(int)} returns null (or the model
+     * from before the change), so bind a placeholder in that case.
+     * <p/>
+     * {@link #close()} stops the background thread.
+     * @param config Configuration to open the background thread's Realm instance with.
+     * @param query  Creates the query results on the background thread.
+     * @param mapper Creates the row models. If null, row models are turned off and the cache is dropped.
+     * @param <M>    Type of the row models.
+     */
+    @SuppressWarnings("unused")
+    public final <M> void setRowModelMapper(RealmConfiguration config, BackgroundQuery<T> query,
+                                            RowModelMapper<T, M> mapper) {
+        if (rowModelLoader != null) {
+            rowModelLoader.stop();
+            rowModelLoader = null;
+            rowModelHandler.removeCallbacks(rowModelRequest);
+            rowModels = null;
+            requestedRowModels.clear();
+        }
+        if (mapper == null) return;
+        if (config == null || query == null) throw new IllegalArgumentException("config and query must not be null");
 
-                    Patch patch = DiffUtils.diff(ids, newIds);
-                    //noinspection unchecked
-                    List<Delta> deltas = patch.getDeltas();
-                    ids = newIds;
-
-                    // If the notification was for a different object/table (we'll have no deltas), don't do anything.
-                    if (!deltas.isEmpty()) {
-                        /*
-                         * When we know we're currently swiping or dragging, we do a few more checks before calling the
-                         * notify methods, because in those cases the real RecyclerView handles many animations without
-                         * us needing to tell it what to do, and notifying it on top of that messes things up.
-                         * Specifically, we don't explicitly notify it of single item moves.
-                         */
-                        boolean singleItemMoved = deltas.size() == 2 && areDeltasFromMove(deltas.get(0), deltas.get(1));
-                        if (!singleItemMoved) {
-                            // Loop through deltas backwards and send notifications for them.
-                            for (int i = deltas.size() - 1; i >= 0; i--) {
-                                Delta d = deltas.get(i);
-                                if (d.getType() == Delta.TYPE.INSERT) {
-                                    notifyItemRangeInserted(d.getOriginal().getPosition(), d.getRevised().size());
-                                } else if (d.getType() == Delta.TYPE.DELETE) {
-                                    notifyItemRangeRemoved(d.getOriginal().getPosition(), d.getOriginal().size());
-                                } else {
-                                    notifyItemRangeChanged(d.getRevised().getPosition(), d.getRevised().size());
-                                }
-                            }
-                        } else if (shouldNotifyOfSingleItemMoves) {
-                            // Notify that a single item moved.
-                            Delta insert = deltas.get(0).getType() == Delta.TYPE.INSERT ? deltas.get(0) : deltas.get(1);
-                            Delta delete = deltas.get(0).getType() == Delta.TYPE.DELETE ? deltas.get(0) : deltas.get(1);
-                            notifyItemMoved(delete.getOriginal().getPosition(), insert.getRevised().getPosition());
-                            notifyItemChanged(insert.getRevised().getPosition());
-                        }
-                    }
-                } else {
-                    notifyDataSetChanged();
-                    ids = getIdsOfRealmResults();
-                }
+        if (rowModelHandler == null) rowModelHandler = new Handler(Looper.getMainLooper());
+        rowModels = new LruCache<>(ROW_MODEL_CACHE_SIZE);
+        rowModelLoader = new RowModelLoader<>(config, query, mapper, new RowModelLoader.Callback<M>() {
+            @Override
+            public void onRowModels(HashMap<Object, M> models, int version) {
+                onRowModelsLoaded(models, version);
             }
-        };
+        });
+        rowModelLoader.start();
+        if (rrv != null) rrv.onAdapterWindowChanged();
+        invalidateRowModels();
     }
 
     /**
-     * Check {@code delta1} and {@code delta2} to determine if, together, they represent a situation where an item has
-     * simply moved to somewhere else in the list.
-     * @param delta1 A delta.
-     * @param delta2 Another delta.
-     * @return True if the deltas represent an item having moved, otherwise false.
+     * Get the number of items on either side of the visible ones whose row models are created ahead of time.
+     * @return Row model prefetch margin.
      */
-    private boolean areDeltasFromMove(Delta delta1, Delta delta2) {
-        // Check delta types, make sure we have one insert and one delete.
-        if (!((delta1.getType() == Delta.TYPE.INSERT && delta2.getType() == Delta.TYPE.DELETE)
-                || (delta1.getType() == Delta.TYPE.DELETE && delta2.getType() == Delta.TYPE.INSERT))) return false;
-        // Figure out which is which.
-        Delta insert = delta1.getType() == Delta.TYPE.INSERT ? delta1 : delta2;
-        Delta delete = delta2.getType() == Delta.TYPE.DELETE ? delta2 : delta1;
-        // Make sure they only affect one "line".
-        if (delete.getOriginal().size() != 1 || insert.getRevised().size() != 1) return false;
-        // And make sure that that "line" has the same content.
-        return delete.getOriginal().getLines().get(0).equals(insert.getRevised().getLines().get(0));
+    @SuppressWarnings("unused")
+    public final int getRowModelPrefetchMargin() {
+        return rowModelMargin;
     }
 
-    final void setRealmRecyclerView(RealmRecyclerView rrv) {
-        this.rrv = rrv;
+    /**
+     * Set the number of items on either side of the visible ones whose row models should be created ahead of time. 20
+     * by default.
+     * @param margin Row model prefetch margin.
+     */
+    @SuppressWarnings("unused")
+    public final void setRowModelPrefetchMargin(int margin) {
+        this.rowModelMargin = Math.max(0, margin);
+        requestRowModels();
     }
 
     /**
-     * Start dragging the given {@code viewHolder}. Will do nothing if drag and drop isn't enabled or if the adapter
-     * isn't attached to a {@link RealmRecyclerView}.
-     * @param viewHolder ViewHolder to start dragging.
+     * Get the row model for the item at {@code position}, if it has been created. Never touches Realm.
+     * @param position Adapter position.
+     * @param <M>      Type of the row models.
+     * @return Row model, or null if it isn't ready yet (or {@code position} is a header or footer row).
+     * @see #setRowModelMapper(RealmConfiguration, BackgroundQuery, RowModelMapper)
+     */
+    protected final <M> M getRowModel(int position) {
+        if (rowModels == null) return null;
+        Object uid = getUIDAt(position);
+        CachedRowModel cached = uid != null ? rowModels.get(uid) : null;
+        //noinspection unchecked
+        return cached != null ? (M) cached.model : null;
+    }
+
+    /**
+     * Note that the items may have changed, so all row models are out of date, and request new ones for the visible
+     * items once the current change has been handled.
+     */
+    final void invalidateRowModels() {
+        if (rowModelLoader == null) return;
+        rowModelVersion++;
+        requestedRowModels.clear();
+        rowModelHandler.removeCallbacks(rowModelRequest);
+        rowModelHandler.post(rowModelRequest);
+    }
+
+    private final Runnable rowModelRequest = new Runnable() {
+        @Override
+        public void run() {
+            requestRowModels();
+        }
+    };
+
+    /**
+     * Request row models for the visible items and those within {@link #rowModelMargin} of them, unless they're up to
+     * date or have already been requested.
+     */
+    private void requestRowModels() {
+        if (rowModelLoader == null || firstVisiblePos == RecyclerView.NO_POSITION) return;
+        int start = Math.max(0, firstVisiblePos - rowModelMargin);
+        int end = Math.min(getItemCount(), lastVisiblePos + 1 + rowModelMargin);
+        List uids = new ArrayList();
+        for (int i = start; i < end; i++) {
+            Object uid = getUIDAt(i);
+            if (uid == null || requestedRowModels.contains(uid)) continue;
+            CachedRowModel cached = rowModels.get(uid);
+            if (cached != null && cached.version == rowModelVersion) continue;
+            //noinspection unchecked
+            uids.add(uid);
+            requestedRowModels.add(uid);
+        }
+        if (!uids.isEmpty()) rowModelLoader.load(uids, rowModelVersion);
+    }
+
+    /**
+     * Cache newly created row models, and re-bind visible rows whose models changed.
+     */
+    private void onRowModelsLoaded(HashMap<?, ?> models, int version) {
+        if (rowModels == null) return;
+        HashSet<Object> changed = new HashSet<>();
+        for (Object uid : models.keySet()) {
+            Object model = models.get(uid);
+            CachedRowModel cached = rowModels.get(uid);
+            if (cached != null && cached.version > version) continue;
+            rowModels.put(uid, new CachedRowModel(model, version));
+            boolean same = cached != null && (model == null ? cached.model == null : model.equals(cached.model));
+            if (!same) changed.add(uid);
+        }
+        if (version == rowModelVersion) requestedRowModels.removeAll(models.keySet());
+        if (changed.isEmpty() || firstVisiblePos == RecyclerView.NO_POSITION) return;
+
+        for (int i = Math.max(0, firstVisiblePos); i <= lastVisiblePos && i < getItemCount(); i++) {
+            Object uid = getUIDAt(i);
+            if (uid != null && changed.contains(uid)) notifyItemChanged(i, REBIND_PAYLOAD);
+        }
+    }
+
+    /**
+     * A row model, along with the {@link #rowModelVersion} it was requested at.
+     */
+    private static final class CachedRowModel {
+        private final Object model;
+        private final int version;
+
+        CachedRowModel(Object model, int version) {
+            this.model = model;
+            this.version = version;
+        }
+    }
+
+    /**
+     * Check whether this adapter shares its UID snapshot with other adapters.
+     * @return Whether snapshots are shared.
      */
     @SuppressWarnings("unused")
-    protected final void startDragging(RecyclerView.ViewHolder viewHolder) {
-        if (rrv != null) rrv.startDragging(viewHolder);
+    public final boolean getShareSnapshots() {
+        return shareSnapshots;
     }
 
-    @Override
-    public int getItemCount() {
-        return realmResults != null ? realmResults.size() : 0;
+    /**
+     * Set whether this adapter should share its UID snapshot (and change listener, and diffing) with any other adapters
+     * which show the exact same {@code RealmResults} instance and have also enabled this. Useful when showing the same
+     * query in more than one place at once, such as in a multi-pane layout, since the cost of keeping up with changes
+     * then doesn't grow with the number of adapters.
+     * <p/>
+     * Windowed snapshots (see {@link #setWindowRadius(int)}) aren't shared. False by default.
+     * @param shareSnapshots Whether to share snapshots.
+     */
+    @SuppressWarnings("unused")
+    public final void setShareSnapshots(boolean shareSnapshots) {
+        if (this.shareSnapshots == shareSnapshots) return;
+        stopListening();
+        this.shareSnapshots = shareSnapshots;
+        startListening();
+        resetIds();
     }
 
     /**
-     * Update the RealmResults associated with the Adapter. Useful when the query has been changed. If the query does
-     * not change you might consider using the automaticUpdate feature.
-     * @param queryResults the new RealmResults coming from the new query.
+     * Called by our {@link SharedSnapshot} when its results change.
+     * @param newIds  The new UIDs.
+     * @param baseIds The UIDs {@code deltas} were computed from.
+     * @param deltas  Deltas from {@code baseIds} to {@code newIds}, or null if the shared snapshot was reset.
+     */
+    final void onSharedSnapshotChanged(List newIds, List baseIds, List<Delta> deltas) {
+        expectedMutations.clear();
+        if (isUpdatePaused()) {
+            missedUpdate = true;
+            return;
+        }
+        clearSelections();
+        invalidateRowModels();
+
+        if (deltas != null && ids == baseIds) {
+            // We're up to date with the shared snapshot, so we can use its diff.
+            ids = newIds;
+            dispatchDeltas(deltas, 0, shouldNotifyOfSingleItemMoves);
+        } else if (ids != null && !ids.isEmpty() && !newIds.isEmpty()) {
+            // We fell behind the shared snapshot (probably because we were paused), so we need our own diff.
+            if (updateMetrics != null) updateMetrics.begin();
+            List<Delta> ownDeltas = diffIds(ids, newIds);
+            if (updateMetrics != null) updateMetrics.diffed();
+            ids = newIds;
+            dispatchDeltas(ownDeltas, 0, shouldNotifyOfSingleItemMoves);
+        } else {
+            ids = newIds;
+            notifyAllChanged();
+        }
+    }
+
+    /**
+     * Called by our {@link SharedSnapshot} once it has finished building its snapshot.
+     * @param builtIds The UIDs.
+     */
+    final void onSharedSnapshotBuilt(List builtIds) {
+        // If we aren't empty, we're behind and will catch up once we're resumed.
+        if (ids == null || ids.isEmpty()) ids = builtIds;
+    }
+
+    /**
+     * Check whether updates are paused, either because {@link #pauseUpdates()} was called or because the {@link
+     * RealmRecyclerView} is detached from its window.
+     * @return True if updates are paused.
      */
     @SuppressWarnings("WeakerAccess")
-    public void updateRealmResults(RealmResults<T> queryResults) {
-        if (changeListener != null && realmResults != null) realmResults.removeChangeListener(changeListener);
+    public final boolean isUpdatePaused() {
+        return updatesPaused || detached;
+    }
 
-        realmResults = queryResults;
-        if (realmResults != null && changeListener != null) realmResults.addChangeListener(changeListener);
+    /**
+     * Stop reacting to changes in {@link #realmResults} until {@link #resumeUpdates()} is called. While paused, the
+     * adapter just notes that something changed; once resumed, it diffs the UIDs it had when it was paused against the
+     * current ones and sends all of the notifications at once. Use this to avoid wasting work on screens which aren't
+     * visible, such as those in the back stack.
+     * <p/>
+     * Pausing updates freezes the list's contents as far as the {@code RecyclerView} is concerned: the item count stays
+     * what it was when updates were paused. Rows which are bound while paused still read the current items, though,
+     * and {@link #getItem(int)} returns null for items which have been removed in the meantime, so avoid pausing
+     * updates for a list which is still on screen.
+     * <p/>
+     * {@link RealmRecyclerView} also pauses updates automatically while it's detached from its window.
+     */
+    @SuppressWarnings("unused")
+    public final void pauseUpdates() {
+        boolean wasFrozen = isCountFrozen();
+        updatesPaused = true;
+        if (!wasFrozen) updateFrozenCount();
+    }
+
+    /**
+     * Resume reacting to changes in {@link #realmResults}, catching up on any that were missed while paused.
+     */
+    @SuppressWarnings("unused")
+    public final void resumeUpdates() {
+        updatesPaused = false;
+        catchUpIfResumed();
+    }
+
+    final void setDetached(boolean detached) {
+        boolean wasFrozen = isCountFrozen();
+        this.detached = detached;
+        if (!wasFrozen) updateFrozenCount();
+        catchUpIfResumed();
+    }
+
+    /**
+     * Catch up on changes to {@link #realmResults} which were missed while updates were paused.
+     */
+    void onMissedUpdateResumed() {
+        if (realmResults == null || !realmResults.isValid()) return;
+        onRealmResultsChanged();
+        invalidateRowModels();
+    }
+
+    /**
+     * If updates aren't paused (anymore), apply any changes which were missed while they were.
+     */
+    private void catchUpIfResumed() {
+        if (isUpdatePaused()) return;
+        if (!listeningDeferred) frozenCount = -1;
+        if (missedUpdate) {
+            missedUpdate = false;
+            if (sharedSnapshot != null) onSharedSnapshotChanged(sharedSnapshot.getIds(), null, null);
+            else onMissedUpdateResumed();
+        }
+        if (missedBackgroundItems != null) {
+            List<T> items = missedBackgroundItems;
+            List newIds = missedBackgroundIds;
+            missedBackgroundItems = null;
+            missedBackgroundIds = null;
+            onBackgroundSnapshot(items, newIds, ids != null ? diffIds(ids, newIds) : null);
+        }
+    }
+
+    private void onBackgroundSnapshot(List<T> items, List newIds, List<Delta> deltas) {
+        expectedMutations.clear();
+        if (isUpdatePaused()) {
+            missedBackgroundItems = items;
+            missedBackgroundIds = newIds;
+            return;
+        }
+        clearSelections();
+        invalidateRowModels();
+        boolean first = backgroundItems == null;
+        backgroundItems = items;
+        ids = newIds;
+        if (first || deltas == null) notifyAllChanged();
+        else dispatchDeltas(deltas, 0, shouldNotifyOfSingleItemMoves);
+    }
+
+    /**
+     * Called by a {@link CarouselPool} to bind this adapter to {@code results} when its carousel is bound.
+     * @param results        Results to show.
+     * @param cachedIds      UIDs from the last time these results were shown, or null.
+     * @param deferListening If true, don't listen for changes (or build a snapshot) until {@link
+     *                       #resumeDeferredListening()} is called.
+     */
+    final void bindNested(RealmResults<T> results, List cachedIds, boolean deferListening) {
+        cancelPendingSwap();
+        stopBackgroundQuery();
+        stopListening();
+        if (snapshotBuilder != null) snapshotBuilder.cancel();
+        snapshotBuilder = null;
 
+        realmResults = results;
+        missedUpdate = false;
+        expectedMutations.clear();
         selectedPositions.clear();
         lastSelectedPos = -1;
-        ids = getIdsOfRealmResults();
-        notifyDataSetChanged();
+        windowStart = 0;
+        nestedBoundSize = results != null ? results.size() : 0;
+        boolean cacheValid = isCachedSnapshotValid(cachedIds);
+
+        listeningDeferred = deferListening && results != null;
+        if (listeningDeferred) ids = cacheValid ? cachedIds : EMPTY_LIST;
+        else {
+            startListening();
+            if (cacheValid && sharedSnapshot == null && windowRadius == 0) ids = cachedIds;
+            else resetIds();
+        }
+        // Until we start listening, keep reporting the size the results had now.
+        updateFrozenCount();
+        notifyAllChanged();
+    }
+
+    /**
+     * Called by a {@link CarouselPool} once its parent has stopped scrolling, if we were bound while it was.
+     */
+    final void resumeDeferredListening() {
+        if (!listeningDeferred) return;
+        listeningDeferred = false;
+        if (realmResults == null || !realmResults.isValid()) return;
+
+        startListening();
+        if (isUpdatePaused()) {
+            // Keep reporting the size from when we were bound, and catch up once updates are resumed.
+            missedUpdate = true;
+            return;
+        }
+        frozenCount = -1;
+        if (sharedSnapshot == null && windowRadius == 0 && !ids.isEmpty()) {
+            // Our snapshot is from when we were bound, so we can diff to catch up on anything we missed since then.
+            onRealmResultsChanged();
+            return;
+        }
+
+        // Otherwise we can't know what changed, so just rebind everything.
+        boolean sizeChanged = realmResults.size() != nestedBoundSize;
+        resetIds();
+        if (sizeChanged) notifyAllChanged();
+        else notifyItemRangeChanged(getHeaderOffset(), nestedBoundSize);
+    }
+
+    /**
+     * Called by a {@link CarouselPool} to unbind this adapter when its carousel is recycled.
+     * @return The current UIDs, for the pool to cache, or null if there aren't any.
+     */
+    final List unbindNested() {
+        List snapshot = ids != null && !ids.isEmpty() && snapshotBuilder == null && windowRadius == 0 ? ids : null;
+        listeningDeferred = false;
+        updateRealmResults(null);
+        return snapshot;
+    }
+
+    /**
+     * Cheaply check whether {@code cachedIds} still look like the UIDs of {@link #realmResults}, by comparing their
+     * sizes and the UIDs at either end.
+     * @param cachedIds Cached UIDs.
+     * @return True if {@code cachedIds} can be used.
+     */
+    private boolean isCachedSnapshotValid(List cachedIds) {
+        if (cachedIds == null || realmResults == null || !realmResults.isValid()) return false;
+        int size = realmResults.size();
+        if (cachedIds.size() != size) return false;
+        return size == 0 || (cachedIds.get(0).equals(realmResults.get(0).getUID())
+                && cachedIds.get(size - 1).equals(realmResults.get(size - 1).getUID()));
+    }
+
+    /**
+     * Set a listener to be told how long each update took: reading the UIDs of the items, diffing them against the
+     * previous ones, and notifying the {@code RecyclerView} of the differences, along with the item counts, the number
+     * of deltas, and which {@link UpdatePath} was taken. Updates are only timed while a listener is set, so this costs
+     * nothing otherwise.
+     * <p/>
+     * While a listener is set, the measurements of recent updates are also kept in {@link #getUpdateHistograms()}.
+     * @param listener Listener to notify, or null to stop timing updates (which also drops the histograms).
+     */
+    @SuppressWarnings("unused")
+    public final void setUpdateMetricsListener(UpdateMetricsListener listener) {
+        if (listener == null) updateMetrics = null;
+        else if (updateMetrics == null) updateMetrics = new UpdateMetricsRecorder(listener, getDataCount());
+        else updateMetrics.setListener(listener);
+    }
+
+    /**
+     * Get rolling histograms of the measurements of recent updates. These are only kept while an {@link
+     * UpdateMetricsListener} is set.
+     * @return Update histograms, or null if no {@link UpdateMetricsListener} is set.
+     * @see #setUpdateMetricsListener(UpdateMetricsListener)
+     */
+    @SuppressWarnings("unused")
+    public final UpdateHistograms getUpdateHistograms() {
+        return updateMetrics != null ? updateMetrics.getHistograms() : null;
+    }
+
+    /**
+     * Get the object which times updates, so that subclasses in this package which diff on their own can time them.
+     * @return Update metrics recorder, or null if no {@link UpdateMetricsListener} is set.
+     */
+    final UpdateMetricsRecorder getUpdateMetricsRecorder() {
+        return updateMetrics;
     }
 
     /**
@@ -180,6 +1898,7 @@ public abstract class RealmRecyclerViewAdapter<T extends RealmModel & UIDModel,
     @SuppressWarnings("unused")
     public final void close() {
         updateRealmResults(null);
+        setRowModelMapper(null, null, null);
     }
 
     /**
@@ -202,7 +1921,7 @@ public abstract class RealmRecyclerViewAdapter<T extends RealmModel & UIDModel,
      */
     @SuppressWarnings("unused")
     public final void setSelected(boolean selected, int position) {
-        if (position < 0 || position >= realmResults.size()) return;
+        if (!isDataPosition(position)) return;
 
         // Don't trigger a redraw if we've already selected the item.
         if (selected == selectedPositions.contains(position)) return;
@@ -215,7 +1934,7 @@ public abstract class RealmRecyclerViewAdapter<T extends RealmModel & UIDModel,
             lastSelectedPos = -1;
         }
 
-        notifyItemChanged(position);
+        notifySelectionChanged(position, 1);
         if (selectionChangeListener != null) selectionChangeListener.itemSelectionChanged();
     }
 
@@ -225,7 +1944,7 @@ public abstract class RealmRecyclerViewAdapter<T extends RealmModel & UIDModel,
      */
     @SuppressWarnings("unused")
     public final void toggleSelected(int position) {
-        if (position < 0 || position >= realmResults.size()) return;
+        if (!isDataPosition(position)) return;
 
         if (!selectedPositions.remove(position)) {
             selectedPositions.add(position);
@@ -234,7 +1953,7 @@ public abstract class RealmRecyclerViewAdapter<T extends RealmModel & UIDModel,
             lastSelectedPos = -1;
         }
 
-        notifyItemChanged(position);
+        notifySelectionChanged(position, 1);
         if (selectionChangeListener != null) selectionChangeListener.itemSelectionChanged();
     }
 
@@ -256,8 +1975,10 @@ public abstract class RealmRecyclerViewAdapter<T extends RealmModel & UIDModel,
     public final List<T> getSelectedRealmObjects() {
         ArrayList<T> realmObjects = new ArrayList<>();
         // If everything is selected, be quick.
-        if (realmResults.size() == selectedPositions.size()) realmObjects.addAll(realmResults);
-        else for (Integer i : selectedPositions) realmObjects.add(realmResults.get(i));
+        if (backgroundItems == null && realmResults != null && getHeaderOffset() == 0
+                && realmResults.size() == selectedPositions.size())
+            realmObjects.addAll(realmResults);
+        else for (Integer i : selectedPositions) realmObjects.add(getItem(i));
         return realmObjects;
     }
 
@@ -269,35 +1990,40 @@ public abstract class RealmRecyclerViewAdapter<T extends RealmModel & UIDModel,
      */
     @SuppressWarnings("unused")
     public final void extendSelectionTo(int position) {
-        if (position < 0 || position >= realmResults.size()) return;
+        if (!isDataPosition(position)) return;
 
         if (selectedPositions.contains(position)) {
             // If this is already selected, de-select it.
             selectedPositions.remove(position);
-            notifyItemChanged(position);
+            notifySelectionChanged(position, 1);
             lastSelectedPos = -1;
             if (selectionChangeListener != null) selectionChangeListener.itemSelectionChanged();
             return;
         } else if (lastSelectedPos == -1) {
             // If we don't have a previously selected position, just select this one.
             selectedPositions.add(position);
-            notifyItemChanged(position);
+            notifySelectionChanged(position, 1);
             if (selectionChangeListener != null) selectionChangeListener.itemSelectionChanged();
             return;
         }
 
-        if (lastSelectedPos < position) {
-            // Ex: lastSelectedPos = 1, pos = 3. Need to select 2, 3.
-            for (int i = lastSelectedPos + 1; i <= position; i++) selectedPositions.add(i);
+        Tracing.begin(Tracing.EXTEND_SELECTION);
+        try {
+            if (lastSelectedPos < position) {
+                // Ex: lastSelectedPos = 1, pos = 3. Need to select 2, 3.
+                for (int i = lastSelectedPos + 1; i <= position; i++) selectedPositions.add(i);
 
-            notifyItemRangeChanged(lastSelectedPos + 1, position - lastSelectedPos);
-            lastSelectedPos = -1;
-        } else {
-            // lastSelectedPos = 3, pos = 1. Need to select 1, 2.
-            for (int i = position; i < lastSelectedPos; i++) selectedPositions.add(i);
+                notifySelectionChanged(lastSelectedPos + 1, position - lastSelectedPos);
+                lastSelectedPos = -1;
+            } else {
+                // lastSelectedPos = 3, pos = 1. Need to select 1, 2.
+                for (int i = position; i < lastSelectedPos; i++) selectedPositions.add(i);
 
-            notifyItemRangeChanged(position, lastSelectedPos - position);
-            lastSelectedPos = -1;
+                notifySelectionChanged(position, lastSelectedPos - position);
+                lastSelectedPos = -1;
+            }
+        } finally {
+            Tracing.end();
         }
         if (selectionChangeListener != null) selectionChangeListener.itemSelectionChanged();
     }
@@ -307,9 +2033,15 @@ public abstract class RealmRecyclerViewAdapter<T extends RealmModel & UIDModel,
      */
     @SuppressWarnings("unused")
     public final void selectAll() {
-        // Add all positions.
-        for (int i = 0; i < realmResults.size(); i++) selectedPositions.add(i);
-        notifyDataSetChanged();
+        Tracing.begin(Tracing.SELECT_ALL);
+        try {
+            // Add all positions.
+            int offset = getHeaderOffset();
+            for (int i = 0; i < getDataCount(); i++) selectedPositions.add(offset + i);
+            notifySelectionChanged(0, -1);
+        } finally {
+            Tracing.end();
+        }
         if (selectionChangeListener != null) selectionChangeListener.itemSelectionChanged();
     }
 
@@ -320,17 +2052,47 @@ public abstract class RealmRecyclerViewAdapter<T extends RealmModel & UIDModel,
     public final void clearSelections() {
         // We definitely don't want to do any redrawing if we don't have anything selected!
         if (selectedPositions.isEmpty()) return;
-        // If there's only one item selected, we can be efficient and just redraw one view.
-        int oneItemPos = selectedPositions.size() == 1 ? (int) selectedPositions.toArray()[0] : -1;
+        Tracing.begin(Tracing.CLEAR_SELECTIONS);
+        try {
+            // If there's only one item selected, we can be efficient and just redraw one view.
+            int oneItemPos = selectedPositions.size() == 1 ? (int) selectedPositions.toArray()[0] : -1;
 
-        selectedPositions.clear();
-        lastSelectedPos = -1;
+            selectedPositions.clear();
+            lastSelectedPos = -1;
 
-        if (oneItemPos != -1) notifyItemChanged(oneItemPos);
-        else notifyDataSetChanged();
+            if (oneItemPos != -1) notifySelectionChanged(oneItemPos, 1);
+            else notifySelectionChanged(0, -1);
+        } finally {
+            Tracing.end();
+        }
         if (selectionChangeListener != null) selectionChangeListener.itemSelectionChanged();
     }
 
+    /**
+     * Notify that items need to be redrawn because their selection state changed. Observers can check {@link
+     * #isNotifyingSelectionChange()} to tell that the items themselves are the same.
+     * @param positionStart Position of the first item to redraw.
+     * @param itemCount     Number of items to redraw, or -1 to redraw all of them.
+     */
+    private void notifySelectionChanged(int positionStart, int itemCount) {
+        notifyingSelectionChange = true;
+        try {
+            if (itemCount == -1) notifyDataSetChanged();
+            else notifyItemRangeChanged(positionStart, itemCount);
+        } finally {
+            notifyingSelectionChange = false;
+        }
+    }
+
+    /**
+     * Check whether the change currently being notified is only a change in the selection state of items, and not in
+     * the items themselves. Their section keys, view types, and so on are the same as before.
+     * @return True if only the selection changed.
+     */
+    final boolean isNotifyingSelectionChange() {
+        return notifyingSelectionChange;
+    }
+
     /**
      * Calls {@code notifyItemChanged()} on each of the currently selected positions.
      */
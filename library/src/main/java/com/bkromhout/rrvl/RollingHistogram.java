@@ -0,0 +1,121 @@
+package com.bkromhout.rrvl;
+
+import java.util.Arrays;
+
+/**
+ * Keeps the most recent samples of some measurement so that percentiles can be read from them, for example to send to
+ * a telemetry service every so often.
+ * <p/>
+ * Recording a sample is O(1) and doesn't allocate; reading a percentile copies and sorts the samples, so read them
+ * all at once using {@link #getPercentiles(double...)} if you need several. Instances are safe to read from any
+ * thread.
+ */
+public final class RollingHistogram {
+    static final int DEFAULT_CAPACITY = 256;
+
+    private final long[] samples;
+    private int next = 0;
+    private int size = 0;
+    private long totalCount = 0L;
+
+    RollingHistogram() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    RollingHistogram(int capacity) {
+        this.samples = new long[capacity];
+    }
+
+    synchronized void record(long sample) {
+        samples[next] = sample;
+        next = (next + 1) % samples.length;
+        if (size < samples.length) size++;
+        totalCount++;
+    }
+
+    /**
+     * Get the number of samples which percentiles are currently computed from. This is at most the histogram's
+     * capacity, since older samples are dropped.
+     * @return Number of samples held.
+     */
+    @SuppressWarnings("unused")
+    public synchronized int getSampleCount() {
+        return size;
+    }
+
+    /**
+     * Get the number of samples which have been recorded since the histogram was created or last cleared, including
+     * ones which have since been dropped.
+     * @return Number of samples recorded.
+     */
+    @SuppressWarnings("unused")
+    public synchronized long getTotalCount() {
+        return totalCount;
+    }
+
+    /**
+     * Get a percentile of the samples held, using the nearest-rank method.
+     * @param percentile Percentile, from 0 to 100.
+     * @return Value at {@code percentile}, or 0 if there are no samples.
+     */
+    @SuppressWarnings("unused")
+    public long getPercentile(double percentile) {
+        return getPercentiles(percentile)[0];
+    }
+
+    /**
+     * Get several percentiles of the samples held, using the nearest-rank method.
+     * @param percentiles Percentiles, from 0 to 100.
+     * @return Values at {@code percentiles}, in the same order. All 0 if there are no samples.
+     */
+    @SuppressWarnings("WeakerAccess")
+    public long[] getPercentiles(double... percentiles) {
+        long[] sorted;
+        synchronized (this) {
+            sorted = Arrays.copyOf(samples, size);
+        }
+        Arrays.sort(sorted);
+
+        long[] values = new long[percentiles.length];
+        if (sorted.length == 0) return values;
+        for (int i = 0; i < percentiles.length; i++) {
+            double p = Math.max(0d, Math.min(100d, percentiles[i]));
+            int rank = (int) Math.ceil(p / 100d * sorted.length);
+            values[i] = sorted[Math.max(0, rank - 1)];
+        }
+        return values;
+    }
+
+    /**
+     * Get the largest of the samples held.
+     * @return Largest sample, or 0 if there are no samples.
+     */
+    @SuppressWarnings("unused")
+    public synchronized long getMax() {
+        long max = 0L;
+        for (int i = 0; i < size; i++) max = Math.max(max, samples[i]);
+        return max;
+    }
+
+    /**
+     * Get the mean of the samples held.
+     * @return Mean, or 0 if there are no samples.
+     */
+    @SuppressWarnings("unused")
+    public synchronized double getMean() {
+        if (size == 0) return 0d;
+        double sum = 0d;
+        for (int i = 0; i < size; i++) sum += samples[i];
+        return sum / size;
+    }
+
+    /**
+     * Drop all samples, for example after sending them somewhere.
+     */
+    @SuppressWarnings("unused")
+    public synchronized void clear() {
+        next = 0;
+        size = 0;
+        totalCount = 0L;
+    }
+}
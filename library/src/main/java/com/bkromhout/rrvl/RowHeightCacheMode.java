@@ -0,0 +1,24 @@
+package com.bkromhout.rrvl;
+
+/**
+ * Controls whether (and how) a {@link RealmRecyclerView} remembers the measured heights of its rows so that the fast
+ * scroller and the scrollbar can map scroll offsets to positions accurately when rows have different heights.
+ * @see RealmRecyclerView#setRowHeightCacheMode(RowHeightCacheMode)
+ */
+public enum RowHeightCacheMode {
+    /**
+     * Don't cache row heights; rely on {@code LinearLayoutManager}'s estimates. This is the default, and is the right
+     * choice if all rows are the same height.
+     */
+    OFF,
+    /**
+     * Remember one height per view type, and assume that all rows of that view type are that height until they're
+     * actually laid out. Good for lists whose rows differ in height mostly by view type.
+     */
+    VIEW_TYPE,
+    /**
+     * Remember the exact height of each row which has been laid out, keyed by its {@link UIDModel#getUID() UID}. Rows
+     * which haven't been laid out yet fall back to the height of their view type.
+     */
+    UID
+}
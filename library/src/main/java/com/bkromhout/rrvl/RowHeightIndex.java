@@ -0,0 +1,314 @@
+package com.bkromhout.rrvl;
+
+import android.util.SparseIntArray;
+import android.view.View;
+import androidx.recyclerview.widget.RecyclerView;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Keeps track of the heights of the rows in a {@link RealmRecyclerView} in a Fenwick tree (binary indexed tree) so that
+ * we can map between item positions and pixel offsets in O(log n) time, even when rows are of different heights.
+ * <p/>
+ * Rows which have been laid out contribute their measured heights; rows which haven't use the height last measured for
+ * their view type (or, in {@link RowHeightCacheMode#UID} mode, the height last measured for their UID).
+ * <p/>
+ * The index is kept up to date using the adapter's range notifications: inserted, removed, and moved rows are shifted
+ * into place, and only inserted and changed rows have their heights estimated again, once the index is next used. The
+ * index is only rebuilt from scratch (lazily) when the adapter notifies that everything changed. Notifications which
+ * only redraw rows (selection changes and re-binds with {@link RealmRecyclerViewAdapter#REBIND_PAYLOAD}) are ignored;
+ * if such a row's height changes, that's picked up when it's next measured.
+ */
+final class RowHeightIndex extends RecyclerView.AdapterDataObserver {
+    /**
+     * Entry in {@link #heights} for a row whose height needs to be estimated.
+     */
+    private static final int UNKNOWN = -1;
+    /**
+     * If more rows than this change before the index is next used, we just rebuild it instead.
+     */
+    private static final int MAX_CHANGED = 1024;
+
+    private final RowHeightCacheMode mode;
+    /**
+     * Heights last measured for each view type.
+     */
+    private final SparseIntArray typeHeights = new SparseIntArray();
+    /**
+     * Heights last measured for each UID. Only used in {@link RowHeightCacheMode#UID} mode.
+     */
+    private final HashMap<Object, Integer> uidHeights;
+
+    private RecyclerView.Adapter adapter;
+    private int[] heights = new int[0];
+    /**
+     * 1-based Fenwick tree over {@link #heights}.
+     */
+    private long[] tree = new long[1];
+    private int size = 0;
+    private int defaultHeight = 0;
+    /**
+     * Whether the index needs to be rebuilt from scratch, estimating the height of every row.
+     */
+    private boolean dirty = true;
+    /**
+     * Whether {@link #tree} needs to be rebuilt from {@link #heights}, after estimating the heights of any {@link
+     * #UNKNOWN} rows.
+     */
+    private boolean treeDirty = false;
+    /**
+     * Positions of rows which have changed since {@link #tree} was last built, and whose heights need to be estimated
+     * again. Only used while {@link #treeDirty} is false; a structural change turns them into {@link #UNKNOWN} rows.
+     */
+    private final ArrayList<Integer> changed = new ArrayList<>();
+
+    RowHeightIndex(RowHeightCacheMode mode) {
+        this.mode = mode;
+        this.uidHeights = mode == RowHeightCacheMode.UID ? new HashMap<Object, Integer>() : null;
+    }
+
+    void setAdapter(RecyclerView.Adapter adapter) {
+        if (this.adapter != null) this.adapter.unregisterAdapterDataObserver(this);
+        this.adapter = adapter;
+        if (adapter != null) adapter.registerAdapterDataObserver(this);
+        dirty = true;
+    }
+
+    @Override
+    public void onChanged() {
+        if (!isSelectionChange()) dirty = true;
+    }
+
+    @Override
+    public void onItemRangeChanged(int positionStart, int itemCount, Object payload) {
+        if (payload == RealmRecyclerViewAdapter.REBIND_PAYLOAD || isSelectionChange()) return;
+        onItemRangeChanged(positionStart, itemCount);
+    }
+
+    @Override
+    public void onItemRangeChanged(int positionStart, int itemCount) {
+        if (dirty) return;
+        int end = Math.min(positionStart + itemCount, size);
+        if (treeDirty) {
+            for (int i = positionStart; i < end; i++) heights[i] = UNKNOWN;
+            return;
+        }
+        if (changed.size() + itemCount > MAX_CHANGED) {
+            dirty = true;
+            return;
+        }
+        for (int i = positionStart; i < end; i++) changed.add(i);
+    }
+
+    @Override
+    public void onItemRangeInserted(int positionStart, int itemCount) {
+        if (dirty) return;
+        markTreeDirty();
+        int newSize = size + itemCount;
+        if (heights.length < newSize) heights = Arrays.copyOf(heights, Math.max(newSize, heights.length * 2));
+        System.arraycopy(heights, positionStart, heights, positionStart + itemCount, size - positionStart);
+        Arrays.fill(heights, positionStart, positionStart + itemCount, UNKNOWN);
+        size = newSize;
+    }
+
+    @Override
+    public void onItemRangeRemoved(int positionStart, int itemCount) {
+        if (dirty) return;
+        markTreeDirty();
+        int end = positionStart + itemCount;
+        System.arraycopy(heights, end, heights, positionStart, size - end);
+        size -= itemCount;
+    }
+
+    @Override
+    public void onItemRangeMoved(int fromPosition, int toPosition, int itemCount) {
+        if (dirty) return;
+        // Keep the heights of the moved rows, since they're the same rows.
+        int[] moved = Arrays.copyOfRange(heights, fromPosition, fromPosition + itemCount);
+        onItemRangeRemoved(fromPosition, itemCount);
+        onItemRangeInserted(toPosition, itemCount);
+        System.arraycopy(moved, 0, heights, toPosition, itemCount);
+    }
+
+    private boolean isSelectionChange() {
+        return adapter instanceof RealmRecyclerViewAdapter
+                && ((RealmRecyclerViewAdapter) adapter).isNotifyingSelectionChange();
+    }
+
+    /**
+     * Note that rows have been inserted or removed, so {@link #tree} will need to be rebuilt. Rows which were waiting
+     * to have their heights estimated again become {@link #UNKNOWN} rows, so that they get shifted with the others.
+     */
+    private void markTreeDirty() {
+        if (treeDirty) return;
+        treeDirty = true;
+        for (int position : changed) heights[position] = UNKNOWN;
+        changed.clear();
+    }
+
+    /**
+     * Whether the index knows enough to be used instead of the layout manager's estimates.
+     * @return True if at least one row has been measured and the adapter has items.
+     */
+    boolean isReady() {
+        ensureBuilt();
+        return size > 0 && defaultHeight > 0;
+    }
+
+    /**
+     * Record the heights of all of the children currently laid out by {@code lm}.
+     * @param lm Layout manager whose children should be measured.
+     */
+    void recordChildren(RecyclerView.LayoutManager lm) {
+        ensureBuilt();
+        for (int i = 0; i < lm.getChildCount(); i++) {
+            View child = lm.getChildAt(i);
+            int pos = lm.getPosition(child);
+            if (pos >= 0) record(pos, getChildHeight(lm, child));
+        }
+    }
+
+    /**
+     * Get the total height of all rows.
+     * @return Total height, in pixels.
+     */
+    long getTotalHeight() {
+        ensureBuilt();
+        return prefixSum(size);
+    }
+
+    /**
+     * Get the offset of the top of the row at {@code position} from the top of the first row.
+     * @param position Position of a row.
+     * @return Sum of the heights of all rows before {@code position}.
+     */
+    long getOffsetOf(int position) {
+        ensureBuilt();
+        return prefixSum(Math.max(0, Math.min(position, size)));
+    }
+
+    /**
+     * Get the position of the row which contains the given offset (measured from the top of the first row).
+     * @param offset Offset in pixels.
+     * @return Position of the row which contains {@code offset}, clamped to valid positions.
+     */
+    int getPositionAt(long offset) {
+        ensureBuilt();
+        if (size == 0) return 0;
+        // Walk down the tree, taking every step which doesn't pass the offset.
+        int pos = 0;
+        long remaining = offset;
+        for (int step = Integer.highestOneBit(size); step > 0; step >>= 1) {
+            int next = pos + step;
+            if (next <= size && tree[next] <= remaining) {
+                pos = next;
+                remaining -= tree[next];
+            }
+        }
+        return Math.min(pos, size - 1);
+    }
+
+    /**
+     * Get the vertical space that {@code child} takes up, including decorations and margins.
+     */
+    static int getChildHeight(RecyclerView.LayoutManager lm, View child) {
+        RecyclerView.LayoutParams lp = (RecyclerView.LayoutParams) child.getLayoutParams();
+        return lm.getDecoratedMeasuredHeight(child) + lp.topMargin + lp.bottomMargin;
+    }
+
+    /**
+     * Get the position of the top edge of {@code child}, including decorations and margins.
+     */
+    static int getChildTop(RecyclerView.LayoutManager lm, View child) {
+        RecyclerView.LayoutParams lp = (RecyclerView.LayoutParams) child.getLayoutParams();
+        return lm.getDecoratedTop(child) - lp.topMargin;
+    }
+
+    private void record(int position, int height) {
+        if (position >= size || height <= 0) return;
+
+        int viewType = adapter.getItemViewType(position);
+        if (typeHeights.get(viewType, -1) == -1) {
+            // The first height we see for a view type becomes the estimate for all unmeasured rows of that type, so
+            // everything needs to be recomputed.
+            typeHeights.put(viewType, height);
+            if (defaultHeight == 0) defaultHeight = height;
+            dirty = true;
+        }
+        if (uidHeights != null) {
+            Object uid = getUID(position);
+            if (uid != null) uidHeights.put(uid, height);
+        }
+
+        if (dirty) ensureBuilt();
+        else if (heights[position] != height) {
+            update(position, height - heights[position]);
+            heights[position] = height;
+        }
+    }
+
+    private Object getUID(int position) {
+        return adapter instanceof RealmRecyclerViewAdapter
+                ? ((RealmRecyclerViewAdapter) adapter).getUIDAt(position) : null;
+    }
+
+    private int estimateHeight(int position) {
+        if (uidHeights != null) {
+            Object uid = getUID(position);
+            Integer height = uid != null ? uidHeights.get(uid) : null;
+            if (height != null) return height;
+        }
+        return typeHeights.get(adapter.getItemViewType(position), defaultHeight);
+    }
+
+    /**
+     * Bring the index up to date. Rebuilding from scratch runs in O(n), and estimates the height of every row. After
+     * rows are inserted or removed, only those rows whose heights are {@link #UNKNOWN} are estimated, but rebuilding
+     * the tree itself still takes O(n) (simple) steps. After rows change, only those rows are estimated, and the tree
+     * is updated in O(log n) per row.
+     */
+    private void ensureBuilt() {
+        if (dirty) {
+            dirty = false;
+            treeDirty = true;
+            changed.clear();
+            size = adapter != null ? adapter.getItemCount() : 0;
+            if (heights.length < size) heights = new int[size];
+            Arrays.fill(heights, 0, size, UNKNOWN);
+        }
+        if (!treeDirty) {
+            for (int position : changed) {
+                if (position >= size) continue;
+                int height = estimateHeight(position);
+                update(position, height - heights[position]);
+                heights[position] = height;
+            }
+            changed.clear();
+            return;
+        }
+        treeDirty = false;
+
+        if (tree.length < size + 1) tree = new long[Math.max(size + 1, tree.length * 2)];
+        for (int i = 0; i < size; i++) {
+            if (heights[i] == UNKNOWN) heights[i] = estimateHeight(i);
+            tree[i + 1] = heights[i];
+        }
+        // Push each node's sum up to its parent.
+        for (int i = 1; i <= size; i++) {
+            int parent = i + (i & -i);
+            if (parent <= size) tree[parent] += tree[i];
+        }
+    }
+
+    private void update(int position, int delta) {
+        for (int i = position + 1; i <= size; i += i & -i) tree[i] += delta;
+    }
+
+    private long prefixSum(int count) {
+        long sum = 0;
+        for (int i = count; i > 0; i -= i & -i) sum += tree[i];
+        return sum;
+    }
+}
@@ -0,0 +1,151 @@
+package com.bkromhout.rrvl;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Process;
+import io.realm.Realm;
+import io.realm.RealmChangeListener;
+import io.realm.RealmConfiguration;
+import io.realm.RealmModel;
+import io.realm.RealmResults;
+
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Creates row models on its own looper thread, using a {@link RowModelMapper}, and hands them to the UI thread.
+ * <p/>
+ * Realm objects can't be passed between threads, so the background thread runs its own copy of the adapter's query
+ * (using a {@link BackgroundQuery}) and finds the items to map by their UIDs. Only the most recent request is worked
+ * on; if a new one comes in while an older one is being mapped, the older one is dropped. When the background thread's
+ * results change, the most recent request is mapped again, since its items' contents may have changed.
+ */
+final class RowModelLoader<T extends RealmModel & UIDModel, M> {
+    interface Callback<M> {
+        /**
+         * Called on the UI thread with the row models for a request.
+         * @param models  Row models, by UID. Items which couldn't be found are left out.
+         * @param version The version passed to {@link #load(List, int)} for the request.
+         */
+        void onRowModels(HashMap<Object, M> models, int version);
+    }
+
+    private final RealmConfiguration config;
+    private final BackgroundQuery<T> query;
+    private final RowModelMapper<T, M> mapper;
+    private final Callback<M> callback;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final HandlerThread thread;
+    private final Handler handler;
+    // The most recent request. Written together while holding this; the UIDs are also checked while mapping.
+    private volatile List requestedUids = null;
+    private int requestedVersion = 0;
+    // These are only touched on the background thread.
+    private Realm realm;
+    private RealmResults<T> results;
+    /**
+     * Positions of the items in {@link #results}, by UID. Null until it's needed after {@link #results} changes.
+     */
+    private HashMap<Object, Integer> positions = null;
+    private volatile boolean stopped = false;
+
+    private final RealmChangeListener<RealmResults<T>> changeListener = new RealmChangeListener<RealmResults<T>>() {
+        @Override
+        public void onChange(RealmResults<T> newResults) {
+            positions = null;
+            loadLatest();
+        }
+    };
+
+    private final Runnable loadRunnable = new Runnable() {
+        @Override
+        public void run() {
+            loadLatest();
+        }
+    };
+
+    RowModelLoader(RealmConfiguration config, BackgroundQuery<T> query, RowModelMapper<T, M> mapper,
+                   Callback<M> callback) {
+        this.config = config;
+        this.query = query;
+        this.mapper = mapper;
+        this.callback = callback;
+        this.thread = new HandlerThread("rrvl-row-models", Process.THREAD_PRIORITY_BACKGROUND);
+        thread.start();
+        this.handler = new Handler(thread.getLooper());
+    }
+
+    void start() {
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                realm = Realm.getInstance(config);
+                results = query.createResults(realm);
+                results.addChangeListener(changeListener);
+            }
+        });
+    }
+
+    /**
+     * Stop listening for changes, close the background Realm instance, and quit the thread. Row models which are still
+     * on their way to the UI thread are dropped.
+     */
+    void stop() {
+        stopped = true;
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (results != null) results.removeChangeListener(changeListener);
+                if (realm != null) realm.close();
+                results = null;
+                realm = null;
+            }
+        });
+        thread.quitSafely();
+    }
+
+    /**
+     * Create the row models for the items whose UIDs are {@code uids}, replacing any unfinished request.
+     * @param uids    UIDs of the items to create row models for.
+     * @param version Passed back with the row models, so that the UI thread can tell how old they are.
+     */
+    void load(List uids, int version) {
+        synchronized (this) {
+            requestedUids = uids;
+            requestedVersion = version;
+        }
+        handler.removeCallbacks(loadRunnable);
+        handler.post(loadRunnable);
+    }
+
+    private void loadLatest() {
+        final List uids;
+        final int version;
+        synchronized (this) {
+            uids = requestedUids;
+            version = requestedVersion;
+        }
+        if (stopped || uids == null || results == null || !results.isLoaded() || !results.isValid()) return;
+
+        if (positions == null) {
+            positions = new HashMap<>(results.size());
+            for (int i = 0; i < results.size(); i++) positions.put(results.get(i).getUID(), i);
+        }
+
+        final HashMap<Object, M> models = new HashMap<>(uids.size());
+        for (Object uid : uids) {
+            // Drop this request if a newer one has come in.
+            if (stopped || uids != requestedUids) return;
+            Integer position = positions.get(uid);
+            if (position != null) models.put(uid, mapper.map(results.get(position)));
+        }
+
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (!stopped) callback.onRowModels(models, version);
+            }
+        });
+    }
+}
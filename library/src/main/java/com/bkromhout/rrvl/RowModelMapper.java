@@ -0,0 +1,22 @@
+package com.bkromhout.rrvl;
+
+import io.realm.RealmModel;
+
+/**
+ * Converts items into immutable row models, which hold exactly what a row displays (already formatted), so that
+ * binding a row only has to read plain fields.
+ * @param <T> Type of the items.
+ * @param <M> Type of the row models.
+ * @see RealmRecyclerViewAdapter#setRowModelMapper(io.realm.RealmConfiguration, BackgroundQuery, RowModelMapper)
+ */
+public interface RowModelMapper<T extends RealmModel & UIDModel, M> {
+    /**
+     * Create the row model for {@code item}. This is called on a background thread, so {@code item} belongs to that
+     * thread's Realm instance; don't keep a reference to it (or any other Realm object) in the row model.
+     * <p/>
+     * Row models should implement {@code equals()}, so that rows are only re-bound when their models actually change.
+     * @param item Item to create the row model for.
+     * @return Row model.
+     */
+    M map(T item);
+}
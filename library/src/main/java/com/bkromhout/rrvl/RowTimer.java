@@ -0,0 +1,69 @@
+package com.bkromhout.rrvl;
+
+import android.view.View;
+import androidx.recyclerview.widget.RecyclerView;
+
+import java.util.WeakHashMap;
+
+/**
+ * Measures how long rows take to create and bind, and passes the times on to its listeners (the {@link
+ * PrefetchController} and the {@link PerformanceMonitor}, if they're enabled).
+ * <p/>
+ * Bind times are measured by the adapter. Create times can't be measured directly, since {@code onCreateViewHolder()}
+ * belongs to the adapter's subclass, so we use a {@code ViewCacheExtension} which never returns a view: RecyclerView
+ * asks it for a view right before it falls back to the pool and then to creating a new view holder, so the time
+ * between that and the bind of a view holder we haven't seen before is (almost entirely) the time it took to create it.
+ */
+final class RowTimer {
+    interface Listener {
+        /**
+         * Called each time the adapter fully binds a row.
+         * @param viewType View type of the row.
+         * @param createNs How long it took to create the row's view holder, or -1 if it was reused.
+         * @param bindNs   How long it took to bind the row.
+         */
+        void onRowTimed(int viewType, long createNs, long bindNs);
+    }
+
+    private Listener[] listeners = new Listener[0];
+    /**
+     * View holders which have been bound at least once, so that we can tell which ones were just created.
+     */
+    private final WeakHashMap<RecyclerView.ViewHolder, Boolean> seenHolders = new WeakHashMap<>();
+    private long fetchStartNs = 0L;
+
+    final RecyclerView.ViewCacheExtension cacheExtension = new RecyclerView.ViewCacheExtension() {
+        @Override
+        public View getViewForPositionAndType(RecyclerView.Recycler recycler, int position, int type) {
+            fetchStartNs = System.nanoTime();
+            return null;
+        }
+    };
+
+    /**
+     * Replace the listeners.
+     * @param listeners Listeners to notify. Nulls are skipped.
+     */
+    void setListeners(Listener... listeners) {
+        int count = 0;
+        for (Listener listener : listeners) if (listener != null) count++;
+        this.listeners = new Listener[count];
+        count = 0;
+        for (Listener listener : listeners) if (listener != null) this.listeners[count++] = listener;
+    }
+
+    /**
+     * Called by the adapter each time it fully binds a row.
+     * @param holder      The view holder which was bound.
+     * @param bindStartNs When the bind started.
+     * @param bindEndNs   When the bind finished.
+     */
+    void onBound(RecyclerView.ViewHolder holder, long bindStartNs, long bindEndNs) {
+        long createNs = -1L;
+        if (seenHolders.put(holder, Boolean.TRUE) == null && fetchStartNs != 0L && fetchStartNs < bindStartNs)
+            createNs = bindStartNs - fetchStartNs;
+        fetchStartNs = 0L;
+        for (Listener listener : listeners)
+            listener.onRowTimed(holder.getItemViewType(), createNs, bindEndNs - bindStartNs);
+    }
+}
@@ -0,0 +1,20 @@
+package com.bkromhout.rrvl;
+
+/**
+ * What a {@link RealmRecyclerView} was doing when a frame was measured.
+ * @see PerformanceSnapshot#getFrameStats(ScrollPhase)
+ */
+public enum ScrollPhase {
+    /**
+     * The user is dragging the list.
+     */
+    DRAG,
+    /**
+     * The list is flinging (or otherwise settling) after the user let go of it.
+     */
+    FLING,
+    /**
+     * The user is dragging the fast scroller's handle.
+     */
+    FAST_SCROLL
+}
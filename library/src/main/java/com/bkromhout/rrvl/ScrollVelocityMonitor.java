@@ -0,0 +1,81 @@
+package com.bkromhout.rrvl;
+
+import androidx.recyclerview.widget.RecyclerView;
+
+/**
+ * Watches a RecyclerView's scroll velocity and tells a {@link Listener} when it crosses above a threshold and when it
+ * drops back below it (or the scroll settles).
+ * <p/>
+ * The velocity is estimated from the distance scrolled between {@code onScrolled()} calls and smoothed a bit, since
+ * individual frames can be fairly noisy. To avoid flip-flopping around the threshold, we don't consider scrolling to be
+ * slow again until the velocity drops below half of the threshold.
+ */
+final class ScrollVelocityMonitor extends RecyclerView.OnScrollListener {
+    interface Listener {
+        /**
+         * Called when the scroll velocity crosses the threshold in either direction.
+         * @param fast True if scrolling is now fast, false if it has slowed down or stopped.
+         */
+        void onScrollSpeedChanged(boolean fast);
+    }
+
+    private static final float SMOOTHING = 0.5f;
+
+    private final Listener listener;
+    private float threshold;
+    private float velocity = 0f;
+    private long lastScrollTime = 0L;
+    private boolean fast = false;
+
+    /**
+     * Create a new {@link ScrollVelocityMonitor}.
+     * @param threshold Velocity threshold, in pixels per second.
+     * @param listener  Listener to notify.
+     */
+    ScrollVelocityMonitor(float threshold, Listener listener) {
+        this.threshold = threshold;
+        this.listener = listener;
+    }
+
+    void setThreshold(float threshold) {
+        this.threshold = threshold;
+    }
+
+    /**
+     * Get the current (smoothed) scroll velocity.
+     * @return Velocity in pixels per second.
+     */
+    float getVelocity() {
+        return velocity;
+    }
+
+    @Override
+    public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+        if (dx == 0 && dy == 0) return;
+
+        long now = System.nanoTime();
+        long elapsed = now - lastScrollTime;
+        lastScrollTime = now;
+        // Ignore the first scroll after a pause, we have nothing to measure it against.
+        if (elapsed <= 0 || elapsed > 100_000_000L) return;
+
+        float instant = Math.max(Math.abs(dx), Math.abs(dy)) * 1_000_000_000f / elapsed;
+        velocity = SMOOTHING * velocity + (1f - SMOOTHING) * instant;
+
+        if (!fast && velocity > threshold) setFast(true);
+        else if (fast && velocity < threshold / 2f) setFast(false);
+    }
+
+    @Override
+    public void onScrollStateChanged(RecyclerView recyclerView, int newState) {
+        if (newState != RecyclerView.SCROLL_STATE_IDLE) return;
+        velocity = 0f;
+        setFast(false);
+    }
+
+    private void setFast(boolean fast) {
+        if (this.fast == fast) return;
+        this.fast = fast;
+        listener.onScrollSpeedChanged(fast);
+    }
+}
@@ -0,0 +1,246 @@
+package com.bkromhout.rrvl;
+
+import androidx.recyclerview.widget.RecyclerView;
+
+import java.util.ArrayList;
+import java.util.Collections;
+
+/**
+ * Keeps track of where the sections of a {@link RealmRecyclerViewAdapter}'s items start, according to a {@link
+ * StickyHeaderProvider}.
+ * <p/>
+ * Rather than comparing the keys of neighbouring items every time we need to know where a section starts, we keep a
+ * sorted list of section start positions (and their keys), and keep it up to date using the adapter's range
+ * notifications (which come from its diffs). Only the keys of the items in each notified range (and their neighbours)
+ * are read, and only once the index is next used. The index is only rebuilt from scratch (lazily) when the adapter
+ * notifies that everything changed. Notifications which only redraw items (selection changes and re-binds with {@link
+ * RealmRecyclerViewAdapter#REBIND_PAYLOAD}) are ignored, since the items' keys are the same.
+ * <p/>
+ * The adapter's header and footer rows aren't part of any section.
+ */
+final class SectionBoundaryIndex extends RecyclerView.AdapterDataObserver {
+    /**
+     * If more positions than this need to be checked, we just rebuild the index instead.
+     */
+    private static final int MAX_PENDING = 1024;
+
+    private final StickyHeaderProvider provider;
+    private final RecyclerView recyclerView;
+    private final ArrayList<Integer> starts = new ArrayList<>();
+    private final ArrayList<Object> keys = new ArrayList<>();
+    /**
+     * Sorted positions which we need to check for section starts.
+     */
+    private final ArrayList<Integer> pending = new ArrayList<>();
+    private RealmRecyclerViewAdapter adapter;
+    private boolean dirty = true;
+
+    SectionBoundaryIndex(StickyHeaderProvider provider, RecyclerView recyclerView) {
+        this.provider = provider;
+        this.recyclerView = recyclerView;
+    }
+
+    void setAdapter(RealmRecyclerViewAdapter adapter) {
+        if (this.adapter != null) this.adapter.unregisterAdapterDataObserver(this);
+        this.adapter = adapter;
+        if (adapter != null) adapter.registerAdapterDataObserver(this);
+        dirty = true;
+    }
+
+    /**
+     * Check whether the item at {@code position} is the first item in its section.
+     * @param position Adapter position.
+     * @return True if a section starts at {@code position}.
+     */
+    boolean isSectionStart(int position) {
+        ensureBuilt();
+        return Collections.binarySearch(starts, position) >= 0;
+    }
+
+    /**
+     * Check whether the item at {@code position} is part of a section.
+     * @param position Adapter position.
+     * @return True if {@code position} isn't a header or footer row.
+     */
+    boolean hasSection(int position) {
+        return adapter != null && adapter.isDataPosition(position);
+    }
+
+    /**
+     * Get the key of the section which contains the item at {@code position}.
+     * @param position Adapter position.
+     * @return Section key.
+     */
+    Object getSectionKeyOf(int position) {
+        int section = getSectionOf(position);
+        return section >= 0 ? keys.get(section) : null;
+    }
+
+    /**
+     * Get the position of the first item in the section after the one which contains the item at {@code position}.
+     * @param position Adapter position.
+     * @return Start position of the next section, or -1 if there isn't one.
+     */
+    int getNextSectionStart(int position) {
+        int section = getSectionOf(position);
+        return section + 1 < starts.size() ? starts.get(section + 1) : -1;
+    }
+
+    private int getSectionOf(int position) {
+        ensureBuilt();
+        int i = Collections.binarySearch(starts, position);
+        return i >= 0 ? i : -i - 2;
+    }
+
+    @Override
+    public void onChanged() {
+        if (!adapter.isNotifyingSelectionChange()) dirty = true;
+    }
+
+    @Override
+    public void onItemRangeChanged(int positionStart, int itemCount, Object payload) {
+        if (payload == RealmRecyclerViewAdapter.REBIND_PAYLOAD || adapter.isNotifyingSelectionChange()) return;
+        onItemRangeChanged(positionStart, itemCount);
+    }
+
+    @Override
+    public void onItemRangeChanged(int positionStart, int itemCount) {
+        invalidateOffsets();
+        if (dirty) return;
+        markPending(positionStart, itemCount + 1);
+    }
+
+    @Override
+    public void onItemRangeInserted(int positionStart, int itemCount) {
+        invalidateOffsets();
+        if (dirty) return;
+        shift(starts, positionStart, itemCount);
+        shift(pending, positionStart, itemCount);
+        markPending(positionStart, itemCount + 1);
+    }
+
+    @Override
+    public void onItemRangeRemoved(int positionStart, int itemCount) {
+        invalidateOffsets();
+        if (dirty) return;
+        // Drop the boundaries of the removed items, then shift the rest down.
+        int end = positionStart + itemCount;
+        for (int i = insertionPoint(starts, positionStart); i < starts.size() && starts.get(i) < end; ) {
+            starts.remove(i);
+            keys.remove(i);
+        }
+        for (int i = insertionPoint(pending, positionStart); i < pending.size() && pending.get(i) < end; )
+            pending.remove(i);
+        shift(starts, end, -itemCount);
+        shift(pending, end, -itemCount);
+        markPending(positionStart, 1);
+    }
+
+    @Override
+    public void onItemRangeMoved(int fromPosition, int toPosition, int itemCount) {
+        onItemRangeRemoved(fromPosition, itemCount);
+        onItemRangeInserted(toPosition, itemCount);
+    }
+
+    /**
+     * Make the RecyclerView ask for the offsets of all of its rows again when it next lays them out.
+     * <p/>
+     * A section can start or stop at a row which isn't re-bound (such as the row after a removed section start, or
+     * after an inserted item with a different key), and RecyclerView otherwise only asks for a row's offsets when it's
+     * bound, so that row would keep a header gap it no longer needs, or not get one. We can't wait to do this until we
+     * know which boundaries moved, because that's only worked out during layout, when it's too late.
+     */
+    private void invalidateOffsets() {
+        recyclerView.invalidateItemDecorations();
+    }
+
+    /**
+     * Add {@code delta} to all positions in {@code positions} which are at or after {@code position}.
+     */
+    private static void shift(ArrayList<Integer> positions, int position, int delta) {
+        for (int i = insertionPoint(positions, position); i < positions.size(); i++)
+            positions.set(i, positions.get(i) + delta);
+    }
+
+    /**
+     * Get the index of the first position in {@code positions} which is at or after {@code position}.
+     */
+    private static int insertionPoint(ArrayList<Integer> positions, int position) {
+        int i = Collections.binarySearch(positions, position);
+        return i >= 0 ? i : -i - 1;
+    }
+
+    /**
+     * Remember that we need to check whether sections start at the {@code count} positions from {@code position}.
+     * <p/>
+     * We can't check right away, because the adapter sends several notifications for each change, and its items are
+     * already in their final positions while we're only part of the way through them. So instead we keep the positions
+     * to check up to date with the notifications, and check them when we're next used.
+     */
+    private void markPending(int position, int count) {
+        if (pending.size() + count > MAX_PENDING) {
+            // It'll be quicker to just rebuild.
+            dirty = true;
+            pending.clear();
+            return;
+        }
+        int i = insertionPoint(pending, position);
+        for (int p = position; p < position + count; p++) {
+            if (i < pending.size() && pending.get(i) == p) i++;
+            else pending.add(i++, p);
+        }
+    }
+
+    /**
+     * Check whether a section starts at {@code position}, and add, update, or remove its boundary accordingly.
+     */
+    private void update(int position) {
+        if (position < 0 || position >= adapter.getItemCount()) return;
+        boolean isData = adapter.isDataPosition(position);
+        Object key = isData ? getKey(position) : null;
+        boolean isStart = isData && (!adapter.isDataPosition(position - 1) || !equal(key, getKey(position - 1)));
+        int i = Collections.binarySearch(starts, position);
+        if (isStart && i >= 0) keys.set(i, key);
+        else if (isStart) {
+            starts.add(-i - 1, position);
+            keys.add(-i - 1, key);
+        } else if (i >= 0) {
+            starts.remove(i);
+            keys.remove(i);
+        }
+    }
+
+    private void ensureBuilt() {
+        if (!dirty) {
+            for (int position : pending) update(position);
+            pending.clear();
+            return;
+        }
+        dirty = false;
+        starts.clear();
+        keys.clear();
+        pending.clear();
+        if (adapter == null) return;
+
+        Object lastKey = null;
+        int first = adapter.getHeaderOffset();
+        int end = first + adapter.getDataCount();
+        for (int i = first; i < end; i++) {
+            Object key = getKey(i);
+            if (i == first || !equal(key, lastKey)) {
+                starts.add(i);
+                keys.add(key);
+            }
+            lastKey = key;
+        }
+    }
+
+    private Object getKey(int position) {
+        //noinspection unchecked
+        return provider.getSectionKey(adapter.getItem(position));
+    }
+
+    private static boolean equal(Object a, Object b) {
+        return a == null ? b == null : a.equals(b);
+    }
+}
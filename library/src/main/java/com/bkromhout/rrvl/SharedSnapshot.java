@@ -0,0 +1,127 @@
+package com.bkromhout.rrvl;
+
+import difflib.Delta;
+import io.realm.RealmChangeListener;
+import io.realm.RealmModel;
+import io.realm.RealmResults;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+/**
+ * A UID snapshot of a {@code RealmResults} which is shared by all of the {@link RealmRecyclerViewAdapter}s which show
+ * that same {@code RealmResults} instance. Only one change listener is registered, and each change is diffed once, no
+ * matter how many adapters are attached; the resulting deltas are then handed to each of them.
+ * <p/>
+ * Adapters get a snapshot using {@link #attach(RealmResults, RealmRecyclerViewAdapter)}, and must {@link
+ * #detach(RealmRecyclerViewAdapter)} from it when they're done with it. Once the last adapter detaches, the snapshot
+ * stops listening for changes and is discarded.
+ */
+final class SharedSnapshot<T extends RealmModel & UIDModel> {
+    private static final IdentityHashMap<RealmResults, SharedSnapshot> SNAPSHOTS = new IdentityHashMap<>();
+
+    private final RealmResults<T> results;
+    private final ArrayList<RealmRecyclerViewAdapter<T, ?>> adapters = new ArrayList<>();
+    private List ids = new ArrayList(0);
+    private LazySnapshotBuilder<T> snapshotBuilder = null;
+
+    private final RealmChangeListener<RealmResults<T>> changeListener = new RealmChangeListener<RealmResults<T>>() {
+        @Override
+        public void onChange(RealmResults<T> newResults) {
+            onResultsChanged();
+        }
+    };
+
+    private SharedSnapshot(RealmResults<T> results) {
+        this.results = results;
+        results.addChangeListener(changeListener);
+        rebuild();
+    }
+
+    /**
+     * Attach {@code adapter} to the shared snapshot for {@code results}, creating it if necessary.
+     * @param results Results to get the shared snapshot for.
+     * @param adapter Adapter to attach.
+     * @return Shared snapshot.
+     */
+    static <T extends RealmModel & UIDModel> SharedSnapshot<T> attach(RealmResults<T> results,
+                                                                   RealmRecyclerViewAdapter<T, ?> adapter) {
+        SharedSnapshot<T> snapshot;
+        synchronized (SNAPSHOTS) {
+            //noinspection unchecked
+            snapshot = SNAPSHOTS.get(results);
+            if (snapshot == null) {
+                snapshot = new SharedSnapshot<>(results);
+                SNAPSHOTS.put(results, snapshot);
+            }
+        }
+        snapshot.adapters.add(adapter);
+        return snapshot;
+    }
+
+    /**
+     * Detach {@code adapter} from this shared snapshot. If it was the last adapter attached, the snapshot is discarded.
+     * @param adapter Adapter to detach.
+     */
+    void detach(RealmRecyclerViewAdapter<T, ?> adapter) {
+        adapters.remove(adapter);
+        if (!adapters.isEmpty()) return;
+
+        synchronized (SNAPSHOTS) {
+            SNAPSHOTS.remove(results);
+        }
+        results.removeChangeListener(changeListener);
+        if (snapshotBuilder != null) snapshotBuilder.cancel();
+        snapshotBuilder = null;
+    }
+
+    /**
+     * Get the current UIDs. Empty while the snapshot is still being built.
+     * @return Current UIDs.
+     */
+    List getIds() {
+        return ids;
+    }
+
+    private void rebuild() {
+        if (snapshotBuilder != null) snapshotBuilder.cancel();
+        ids = new ArrayList(0);
+        snapshotBuilder = new LazySnapshotBuilder<>(results, new LazySnapshotBuilder.Callback() {
+            @Override
+            public void onSnapshotBuilt(List builtIds) {
+                snapshotBuilder = null;
+                ids = builtIds;
+                for (RealmRecyclerViewAdapter<T, ?> adapter : new ArrayList<>(adapters))
+                    adapter.onSharedSnapshotBuilt(builtIds);
+            }
+        });
+        snapshotBuilder.start();
+    }
+
+    private void onResultsChanged() {
+        List oldIds = ids;
+        List<Delta> deltas = null;
+        if (snapshotBuilder != null || oldIds.isEmpty()) {
+            // We don't have a complete snapshot to diff against, so the adapters will just have to reset.
+            rebuild();
+        } else {
+            List newIds;
+            Tracing.begin(Tracing.SNAPSHOT);
+            try {
+                newIds = new ArrayList(results.size());
+                for (T item : results)
+                    //noinspection unchecked
+                    newIds.add(item.getUID());
+                Tracing.counter(Tracing.LIST_SIZE_COUNTER, newIds.size());
+            } finally {
+                Tracing.end();
+            }
+            deltas = RealmRecyclerViewAdapter.diffIds(oldIds, newIds);
+            ids = newIds;
+        }
+
+        for (RealmRecyclerViewAdapter<T, ?> adapter : new ArrayList<>(adapters))
+            adapter.onSharedSnapshotChanged(ids, oldIds, deltas);
+    }
+}
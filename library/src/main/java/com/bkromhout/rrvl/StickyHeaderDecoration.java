@@ -0,0 +1,130 @@
+package com.bkromhout.rrvl;
+
+import android.graphics.Canvas;
+import android.graphics.Rect;
+import android.view.View;
+import android.view.ViewGroup;
+import androidx.recyclerview.widget.RecyclerView;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Draws section headers from a {@link StickyHeaderProvider} above the first item of each section, and keeps the header
+ * of the section at the top of the list stuck to the top until the next section's header pushes it up.
+ * <p/>
+ * Section starts come from a {@link SectionBoundaryIndex}, so drawing doesn't need to read any items. Header views are
+ * cached by section key, so they only need to be bound (and measured) when a new section comes into view.
+ */
+final class StickyHeaderDecoration extends RecyclerView.ItemDecoration {
+    /**
+     * Maximum number of header views to keep around.
+     */
+    private static final int MAX_CACHED_HEADERS = 16;
+
+    private final StickyHeaderProvider provider;
+    private final SectionBoundaryIndex index;
+    private final LinkedHashMap<Object, View> headers = new LinkedHashMap<Object, View>(MAX_CACHED_HEADERS, 0.75f,
+            true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Object, View> eldest) {
+            return size() > MAX_CACHED_HEADERS;
+        }
+    };
+
+    /**
+     * The width the cached headers were laid out for.
+     */
+    private int headerWidth = -1;
+
+    StickyHeaderDecoration(StickyHeaderProvider provider, RecyclerView recyclerView) {
+        this.provider = provider;
+        this.index = new SectionBoundaryIndex(provider, recyclerView);
+    }
+
+    void setAdapter(RealmRecyclerViewAdapter adapter) {
+        index.setAdapter(adapter);
+        headers.clear();
+    }
+
+    @Override
+    public void getItemOffsets(Rect outRect, View view, RecyclerView parent, RecyclerView.State state) {
+        int position = parent.getChildAdapterPosition(view);
+        if (position == RecyclerView.NO_POSITION || !index.isSectionStart(position)) {
+            outRect.set(0, 0, 0, 0);
+            return;
+        }
+        outRect.set(0, getHeader(parent, index.getSectionKeyOf(position)).getHeight(), 0, 0);
+    }
+
+    @Override
+    public void onDrawOver(Canvas c, RecyclerView parent, RecyclerView.State state) {
+        int childCount = parent.getChildCount();
+        if (childCount == 0) return;
+        int top = parent.getPaddingTop();
+
+        // Draw the headers of sections which start on screen, except one which would be above the top.
+        int firstPosition = RecyclerView.NO_POSITION;
+        View firstChild = null;
+        for (int i = 0; i < childCount; i++) {
+            View child = parent.getChildAt(i);
+            int position = parent.getChildAdapterPosition(child);
+            if (position == RecyclerView.NO_POSITION) continue;
+            if (firstPosition == RecyclerView.NO_POSITION || position < firstPosition) {
+                firstPosition = position;
+                firstChild = child;
+            }
+            if (!index.isSectionStart(position)) continue;
+            View header = getHeader(parent, index.getSectionKeyOf(position));
+            int headerTop = child.getTop() - header.getHeight() + (int) child.getTranslationY();
+            if (headerTop > top) drawHeader(c, parent, header, headerTop);
+        }
+        if (firstChild == null || !index.hasSection(firstPosition)) return;
+
+        // Draw the sticky header for the section at the top, pushed up by the next section's header if it's close.
+        View sticky = getHeader(parent, index.getSectionKeyOf(firstPosition));
+        int stickyTop = top;
+        int nextStart = index.getNextSectionStart(firstPosition);
+        if (nextStart != -1) {
+            RecyclerView.ViewHolder next = parent.findViewHolderForAdapterPosition(nextStart);
+            if (next != null) {
+                View nextHeader = getHeader(parent, index.getSectionKeyOf(nextStart));
+                int nextHeaderTop = next.itemView.getTop() - nextHeader.getHeight();
+                stickyTop = Math.min(top, nextHeaderTop - sticky.getHeight());
+            }
+        }
+        drawHeader(c, parent, sticky, stickyTop);
+    }
+
+    private void drawHeader(Canvas c, RecyclerView parent, View header, int top) {
+        int save = c.save();
+        c.translate(parent.getPaddingLeft(), top);
+        header.draw(c);
+        c.restoreToCount(save);
+    }
+
+    /**
+     * Get the header view for the section whose key is {@code key}, creating, binding, and laying it out if it isn't
+     * cached.
+     */
+    private View getHeader(RecyclerView parent, Object key) {
+        int width = parent.getWidth() - parent.getPaddingLeft() - parent.getPaddingRight();
+        if (width != headerWidth) {
+            headers.clear();
+            headerWidth = width;
+        }
+        View header = headers.get(key);
+        if (header != null) return header;
+
+        header = provider.createHeaderView(parent);
+        provider.bindHeaderView(header, key);
+        ViewGroup.LayoutParams lp = header.getLayoutParams();
+        int heightSpec = lp != null && lp.height > 0
+                ? View.MeasureSpec.makeMeasureSpec(lp.height, View.MeasureSpec.EXACTLY)
+                : View.MeasureSpec.makeMeasureSpec(0, View.MeasureSpec.UNSPECIFIED);
+        header.measure(View.MeasureSpec.makeMeasureSpec(width, View.MeasureSpec.EXACTLY), heightSpec);
+        header.layout(0, 0, header.getMeasuredWidth(), header.getMeasuredHeight());
+        headers.put(key, header);
+        return header;
+    }
+}
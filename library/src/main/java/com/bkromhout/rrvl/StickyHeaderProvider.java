@@ -0,0 +1,38 @@
+package com.bkromhout.rrvl;
+
+import android.view.View;
+import android.view.ViewGroup;
+import io.realm.RealmModel;
+
+/**
+ * Provides sticky section headers for a {@link RealmRecyclerView}.
+ * <p/>
+ * Items are grouped into sections by their section keys; a new section starts wherever an item's key isn't equal to
+ * the key of the item before it. A header is drawn above the first item of each section, and the header of the section
+ * at the top of the list sticks to the top until the next section's header pushes it out of the way.
+ * <p/>
+ * Headers are drawn by an {@code ItemDecoration}, so they aren't items in the adapter, and they don't receive touches.
+ * @see RealmRecyclerView#setStickyHeaderProvider(StickyHeaderProvider)
+ */
+public interface StickyHeaderProvider<T extends RealmModel & UIDModel> {
+    /**
+     * Get the key of the section which {@code item} belongs to. Keys are compared using {@code equals()}.
+     * @param item An item from the adapter.
+     * @return Section key. May be null.
+     */
+    Object getSectionKey(T item);
+
+    /**
+     * Create a view to use as a section header. Views are reused for different sections.
+     * @param parent The RecyclerView. Don't add the view to it.
+     * @return New header view.
+     */
+    View createHeaderView(ViewGroup parent);
+
+    /**
+     * Bind {@code headerView} so that it's the header for the section whose key is {@code sectionKey}.
+     * @param headerView Header view which was created by {@link #createHeaderView(ViewGroup)}.
+     * @param sectionKey Section key.
+     */
+    void bindHeaderView(View headerView, Object sectionKey);
+}
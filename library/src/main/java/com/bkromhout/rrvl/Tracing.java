@@ -0,0 +1,84 @@
+package com.bkromhout.rrvl;
+
+import android.os.Build;
+import android.os.Trace;
+
+import java.lang.reflect.Method;
+
+/**
+ * Wraps the library's hot paths in named system trace sections, so that they show up separately in systrace and
+ * Perfetto captures instead of as one block under the Realm change callback.
+ * <p/>
+ * Use it like this, so that sections stay balanced even if the traced code throws:
+ * <pre>
+ * Tracing.begin(Tracing.DIFF);
+ * try {
+ *     ...
+ * } finally {
+ *     Tracing.end();
+ * }
+ * </pre>
+ * {@code Trace.beginSection()} checks whether tracing is on itself, so this is cheap when it isn't.
+ * <p/>
+ * On Android 10 and later we also set a couple of counters. {@code Trace.isEnabled()} and {@code Trace.setCounter()}
+ * are newer than the SDK we compile against, so we look them up by reflection once, and only call them when they
+ * exist.
+ */
+final class Tracing {
+    static final String SNAPSHOT = "RRVL:snapshot";
+    static final String DIFF = "RRVL:diff";
+    static final String DISPATCH = "RRVL:dispatch";
+    static final String FAST_SCROLL = "RRVL:fastScroll";
+    static final String SELECT_ALL = "RRVL:selectAll";
+    static final String CLEAR_SELECTIONS = "RRVL:clearSelections";
+    static final String EXTEND_SELECTION = "RRVL:extendSelection";
+    static final String LIST_SIZE_COUNTER = "RRVL:listSize";
+    static final String DELTA_COUNT_COUNTER = "RRVL:deltaCount";
+
+    /**
+     * {@code Trace.isEnabled()} and {@code Trace.setCounter(String, long)}, or null before Android 10.
+     */
+    private static final Method IS_ENABLED = findTraceMethod("isEnabled");
+    private static final Method SET_COUNTER = findTraceMethod("setCounter", String.class, long.class);
+
+    private Tracing() {
+    }
+
+    /**
+     * Begin a trace section. Must be followed by a call to {@link #end()} in a {@code finally} block.
+     * @param section Section name. Use one of the constants, so nothing is allocated.
+     */
+    static void begin(String section) {
+        Trace.beginSection(section);
+    }
+
+    /**
+     * End the trace section begun by the matching call to {@link #begin(String)}.
+     */
+    static void end() {
+        Trace.endSection();
+    }
+
+    /**
+     * Set a trace counter, if tracing is on and counters are available.
+     * @param counter Counter name. Use one of the constants.
+     * @param value   Value.
+     */
+    static void counter(String counter, long value) {
+        if (SET_COUNTER == null || IS_ENABLED == null) return;
+        try {
+            if ((Boolean) IS_ENABLED.invoke(null)) SET_COUNTER.invoke(null, counter, value);
+        } catch (Exception ignored) {
+            // Counters are just nice to have.
+        }
+    }
+
+    private static Method findTraceMethod(String name, Class<?>... parameterTypes) {
+        if (Build.VERSION.SDK_INT < 29) return null;
+        try {
+            return Trace.class.getMethod(name, parameterTypes);
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.bkromhout.rrvl;
+
+/**
+ * Rolling histograms of the {@link UpdateMetrics} of a {@link RealmRecyclerViewAdapter}'s most recent updates. Stages
+ * which didn't run on the UI thread aren't recorded.
+ * @see RealmRecyclerViewAdapter#getUpdateHistograms()
+ */
+public final class UpdateHistograms {
+    private final RollingHistogram snapshotNs = new RollingHistogram();
+    private final RollingHistogram diffNs = new RollingHistogram();
+    private final RollingHistogram dispatchNs = new RollingHistogram();
+    private final RollingHistogram totalNs = new RollingHistogram();
+    private final RollingHistogram deltaCount = new RollingHistogram();
+
+    UpdateHistograms() {
+    }
+
+    void record(UpdateMetrics metrics) {
+        if (metrics.getSnapshotNs() >= 0L) snapshotNs.record(metrics.getSnapshotNs());
+        if (metrics.getDiffNs() >= 0L) {
+            diffNs.record(metrics.getDiffNs());
+            deltaCount.record(metrics.getDeltaCount());
+        }
+        dispatchNs.record(metrics.getDispatchNs());
+        totalNs.record(metrics.getTotalNs());
+    }
+
+    /**
+     * Get the histogram of snapshot times, in nanoseconds.
+     * @return Snapshot times.
+     */
+    @SuppressWarnings("unused")
+    public RollingHistogram getSnapshotNs() {
+        return snapshotNs;
+    }
+
+    /**
+     * Get the histogram of diff times, in nanoseconds.
+     * @return Diff times.
+     */
+    @SuppressWarnings("unused")
+    public RollingHistogram getDiffNs() {
+        return diffNs;
+    }
+
+    /**
+     * Get the histogram of dispatch times, in nanoseconds.
+     * @return Dispatch times.
+     */
+    @SuppressWarnings("unused")
+    public RollingHistogram getDispatchNs() {
+        return dispatchNs;
+    }
+
+    /**
+     * Get the histogram of total times, in nanoseconds.
+     * @return Total times.
+     */
+    @SuppressWarnings("unused")
+    public RollingHistogram getTotalNs() {
+        return totalNs;
+    }
+
+    /**
+     * Get the histogram of the number of deltas produced by each diff which ran on the UI thread.
+     * @return Delta counts.
+     */
+    @SuppressWarnings("unused")
+    public RollingHistogram getDeltaCount() {
+        return deltaCount;
+    }
+}
@@ -0,0 +1,101 @@
+package com.bkromhout.rrvl;
+
+/**
+ * Measurements for one update of a {@link RealmRecyclerViewAdapter}: taking a snapshot of its items' UIDs, diffing it
+ * against the last one, and notifying its {@code RecyclerView} of the differences.
+ * <p/>
+ * Times are in nanoseconds. A stage which didn't run on the UI thread (because the snapshot was shared with other
+ * adapters or taken by a {@link BackgroundQuery}, for example), or didn't run at all, has a time of -1.
+ * @see UpdateMetricsListener
+ */
+public final class UpdateMetrics {
+    private final UpdatePath path;
+    private final int oldSize;
+    private final int newSize;
+    private final long snapshotNs;
+    private final long diffNs;
+    private final int deltaCount;
+    private final long dispatchNs;
+
+    UpdateMetrics(UpdatePath path, int oldSize, int newSize, long snapshotNs, long diffNs, int deltaCount,
+                  long dispatchNs) {
+        this.path = path;
+        this.oldSize = oldSize;
+        this.newSize = newSize;
+        this.snapshotNs = snapshotNs;
+        this.diffNs = diffNs;
+        this.deltaCount = deltaCount;
+        this.dispatchNs = dispatchNs;
+    }
+
+    /**
+     * Get how the change was notified.
+     * @return Update path.
+     */
+    public UpdatePath getPath() {
+        return path;
+    }
+
+    /**
+     * Get the number of items (not counting header and footer rows) before the update.
+     * @return Old item count.
+     */
+    public int getOldSize() {
+        return oldSize;
+    }
+
+    /**
+     * Get the number of items (not counting header and footer rows) after the update.
+     * @return New item count.
+     */
+    public int getNewSize() {
+        return newSize;
+    }
+
+    /**
+     * Get how long it took to read the UIDs of the items.
+     * @return Snapshot time, or -1.
+     */
+    public long getSnapshotNs() {
+        return snapshotNs;
+    }
+
+    /**
+     * Get how long it took to diff the new UIDs against the old ones.
+     * @return Diff time, or -1.
+     */
+    public long getDiffNs() {
+        return diffNs;
+    }
+
+    /**
+     * Get the number of deltas which the diff produced. For {@link UpdatePath#EXPECTED}, this is the number of expected
+     * mutations instead.
+     * @return Delta count.
+     */
+    public int getDeltaCount() {
+        return deltaCount;
+    }
+
+    /**
+     * Get how long it took to notify the {@code RecyclerView}. This doesn't include the layout pass which follows.
+     * @return Dispatch time.
+     */
+    public long getDispatchNs() {
+        return dispatchNs;
+    }
+
+    /**
+     * Get how long the stages of the update which ran on the UI thread took altogether.
+     * @return Total time.
+     */
+    public long getTotalNs() {
+        return Math.max(0L, snapshotNs) + Math.max(0L, diffNs) + dispatchNs;
+    }
+
+    @Override
+    public String toString() {
+        return "UpdateMetrics{path=" + path + ", oldSize=" + oldSize + ", newSize=" + newSize + ", snapshotNs="
+                + snapshotNs + ", diffNs=" + diffNs + ", deltaCount=" + deltaCount + ", dispatchNs=" + dispatchNs + "}";
+    }
+}
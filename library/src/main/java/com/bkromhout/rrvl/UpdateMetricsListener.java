@@ -0,0 +1,15 @@
+package com.bkromhout.rrvl;
+
+/**
+ * Told how long each update of a {@link RealmRecyclerViewAdapter} took.
+ * @see RealmRecyclerViewAdapter#setUpdateMetricsListener(UpdateMetricsListener)
+ */
+public interface UpdateMetricsListener {
+    /**
+     * Called on the UI thread right after the adapter has notified its {@code RecyclerView} of a change. This is
+     * called in the middle of the adapter's update, so keep it quick; handing {@code metrics} off to be logged or sent
+     * somewhere later is fine.
+     * @param metrics Measurements for the update.
+     */
+    void onUpdateMeasured(UpdateMetrics metrics);
+}
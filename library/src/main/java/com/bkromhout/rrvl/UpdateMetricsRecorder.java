@@ -0,0 +1,73 @@
+package com.bkromhout.rrvl;
+
+/**
+ * Times the stages of a {@link RealmRecyclerViewAdapter}'s updates, and hands the results to an {@link
+ * UpdateMetricsListener} and some {@link UpdateHistograms}.
+ * <p/>
+ * An update starts with {@link #begin()}, then calls {@link #snapshotTaken()} and {@link #diffed()} as it finishes
+ * those stages, if it runs them. Notifying always starts with {@link #dispatching()} and ends with {@link
+ * #dispatched(UpdatePath, int, int)}; if {@link #begin()} wasn't called first, the snapshot and diff were done
+ * elsewhere.
+ */
+final class UpdateMetricsRecorder {
+    private UpdateMetricsListener listener;
+    private final UpdateHistograms histograms = new UpdateHistograms();
+    /**
+     * The item count after the last update, which is the item count before the next one.
+     */
+    private int lastSize;
+    private boolean active = false;
+    /**
+     * When the current stage started.
+     */
+    private long markNs = 0L;
+    private long snapshotNs = -1L;
+    private long diffNs = -1L;
+
+    UpdateMetricsRecorder(UpdateMetricsListener listener, int size) {
+        this.listener = listener;
+        this.lastSize = size;
+    }
+
+    void setListener(UpdateMetricsListener listener) {
+        this.listener = listener;
+    }
+
+    UpdateHistograms getHistograms() {
+        return histograms;
+    }
+
+    void begin() {
+        active = true;
+        snapshotNs = -1L;
+        diffNs = -1L;
+        markNs = System.nanoTime();
+    }
+
+    void snapshotTaken() {
+        long now = System.nanoTime();
+        snapshotNs = now - markNs;
+        markNs = now;
+    }
+
+    void diffed() {
+        long now = System.nanoTime();
+        diffNs = now - markNs;
+        markNs = now;
+    }
+
+    void dispatching() {
+        if (!active) begin();
+        markNs = System.nanoTime();
+    }
+
+    void dispatched(UpdatePath path, int deltaCount, int newSize) {
+        if (!active) return;
+        active = false;
+        UpdateMetrics metrics = new UpdateMetrics(path, lastSize, newSize, snapshotNs, diffNs, deltaCount,
+                System.nanoTime() - markNs);
+        lastSize = newSize;
+        histograms.record(metrics);
+        listener.onUpdateMeasured(metrics);
+    }
+}
@@ -0,0 +1,30 @@
+package com.bkromhout.rrvl;
+
+/**
+ * How a {@link RealmRecyclerViewAdapter} told its {@code RecyclerView} about a change to its items.
+ * @see UpdateMetrics#getPath()
+ */
+public enum UpdatePath {
+    /**
+     * Nothing which the adapter shows changed, so nothing was notified.
+     */
+    NONE,
+    /**
+     * The diff showed that a single item moved, so a single move was notified (unless the item was being dragged, in
+     * which case the {@code RecyclerView} already knew about it).
+     */
+    MOVE,
+    /**
+     * A range was notified for each delta from the diff.
+     */
+    RANGES,
+    /**
+     * The mutations registered using {@link RealmRecyclerViewAdapter#expectMove(int, int)} and friends were what
+     * happened, so they were notified without diffing.
+     */
+    EXPECTED,
+    /**
+     * Everything was notified as changed, because there was nothing to diff against (or the results were replaced).
+     */
+    FULL_RESET
+}
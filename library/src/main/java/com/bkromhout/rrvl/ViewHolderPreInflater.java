@@ -0,0 +1,137 @@
+package com.bkromhout.rrvl;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.SparseIntArray;
+import androidx.recyclerview.widget.RecyclerView;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Creates view holders ahead of time on a worker thread and puts them into a RecyclerView's {@code RecycledViewPool},
+ * so that the first scroll into a view type doesn't have to inflate its layouts on the UI thread.
+ * <p/>
+ * View holders are created using the adapter's {@code createViewHolder()}, so layouts are inflated the same way as
+ * usual. For view types which the adapter says are safe to create off of the UI thread (see {@link
+ * RealmRecyclerViewAdapter#canPreInflateOffMainThread(int)}), that happens on a worker thread, with the adapter's
+ * {@link RealmRecyclerViewAdapter#getInflater()} returning a clone of its inflater. Other view types are created on
+ * the UI thread, one per message so that we don't block it for long. If a layout turns out not to be inflatable off of
+ * the UI thread after all (say, a view in it creates a {@code Handler}), we fall back to the UI thread for the rest of
+ * that view type's holders.
+ */
+final class ViewHolderPreInflater {
+    /**
+     * The number of view holders of each type a {@code RecycledViewPool} holds by default.
+     */
+    private static final int DEFAULT_MAX_SCRAP = 5;
+    /**
+     * All pre-inflaters share one worker thread.
+     */
+    private static final ExecutorService EXECUTOR = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "rrvl-pre-inflate");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final RecyclerView recyclerView;
+    /**
+     * Target number of pooled view holders, by view type.
+     */
+    private final SparseIntArray targets = new SparseIntArray();
+    private RealmRecyclerViewAdapter adapter;
+    /**
+     * Incremented whenever the adapter changes, so that holders created for an old adapter can be dropped.
+     */
+    private volatile int generation = 0;
+
+    ViewHolderPreInflater(RecyclerView recyclerView) {
+        this.recyclerView = recyclerView;
+    }
+
+    /**
+     * Set the adapter to create view holders with. Pending work for the old adapter is dropped, and pre-inflation is
+     * restarted for the new one.
+     * @param adapter Adapter.
+     */
+    void setAdapter(RealmRecyclerViewAdapter adapter) {
+        this.adapter = adapter;
+        generation++;
+        for (int i = 0; i < targets.size(); i++) start(targets.keyAt(i));
+    }
+
+    /**
+     * Make sure that the pool has at least {@code count} view holders of type {@code viewType}.
+     * @param viewType View type.
+     * @param count    Number of view holders.
+     */
+    void preInflate(int viewType, int count) {
+        targets.put(viewType, count);
+        // The pool won't hold more than its max, so make sure that it's at least our target.
+        recyclerView.getRecycledViewPool().setMaxRecycledViews(viewType, Math.max(count, DEFAULT_MAX_SCRAP));
+        start(viewType);
+    }
+
+    private void start(final int viewType) {
+        final RealmRecyclerViewAdapter adapter = this.adapter;
+        if (adapter == null) return;
+        final int missing = targets.get(viewType) - recyclerView.getRecycledViewPool().getRecycledViewCount(viewType);
+        if (missing <= 0) return;
+
+        final int requestGeneration = generation;
+        if (!adapter.canPreInflateOffMainThread(viewType)) {
+            createOnMainThread(adapter, viewType, missing, requestGeneration);
+            return;
+        }
+        EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < missing; i++) {
+                    if (requestGeneration != generation) return;
+                    final RecyclerView.ViewHolder holder;
+                    try {
+                        holder = adapter.createViewHolderOffMainThread(recyclerView, viewType);
+                    } catch (RuntimeException e) {
+                        // This layout can't be inflated here, so do the rest on the UI thread.
+                        createOnMainThread(adapter, viewType, missing - i, requestGeneration);
+                        return;
+                    }
+                    mainHandler.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            addToPool(holder, viewType, requestGeneration);
+                        }
+                    });
+                }
+            }
+        });
+    }
+
+    private void createOnMainThread(final RealmRecyclerViewAdapter adapter, final int viewType, final int remaining,
+                                    final int requestGeneration) {
+        if (remaining <= 0) return;
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (requestGeneration != generation || isPoolFull(viewType)) return;
+                //noinspection unchecked
+                addToPool(adapter.createViewHolder(recyclerView, viewType), viewType, requestGeneration);
+                createOnMainThread(adapter, viewType, remaining - 1, requestGeneration);
+            }
+        });
+    }
+
+    private void addToPool(RecyclerView.ViewHolder holder, int viewType, int requestGeneration) {
+        if (requestGeneration != generation || isPoolFull(viewType)) return;
+        recyclerView.getRecycledViewPool().putRecycledView(holder);
+    }
+
+    private boolean isPoolFull(int viewType) {
+        return recyclerView.getRecycledViewPool().getRecycledViewCount(viewType) >= targets.get(viewType);
+    }
+}
@@ -30,28 +30,16 @@ public class ItemAdapter extends RealmRecyclerViewAdapter<Item, RecyclerView.Vie
 
     public ItemAdapter(Context context, RealmResults<Item> realmResults) {
         super(context, realmResults);
-        setHasStableIds(true);
+        setFooterCount(1);
         this.context = context;
     }
 
-    @Override
-    public int getItemCount() {
-        int superCount = super.getItemCount();
-        return superCount == 0 ? 0 : superCount + 1;
-    }
-
     @Override
     public int getItemViewType(int position) {
-        if (super.getItemCount() != 0 && position == super.getItemCount()) return -1;
+        if (isFooterPosition(position)) return -1;
         else return super.getItemViewType(position);
     }
 
-    @Override
-    public long getItemId(int position) {
-        if (position == super.getItemCount()) return Long.MIN_VALUE;
-        return realmResults.get(position).uniqueId;
-    }
-
     @Override
     public RecyclerView.ViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
         if (viewType == -1) return new RecyclerView.ViewHolder(
@@ -62,9 +50,9 @@ public class ItemAdapter extends RealmRecyclerViewAdapter<Item, RecyclerView.Vie
     @Override
     public void onBindViewHolder(final RecyclerView.ViewHolder holder, int position) {
         // If this is the empty view, we have nothing to do.
-        if (position == getItemCount() || !(holder instanceof ItemVH)) return;
+        if (!(holder instanceof ItemVH)) return;
         final ItemVH vh = (ItemVH) holder;
-        Item item = realmResults.get(position);
+        Item item = getItem(position);
         vh.name.setText(item.name);
         // We set the unique ID as the tag on a view so that we will be able to get it
         // in the onMove() method.
@@ -85,6 +73,9 @@ public class ItemAdapter extends RealmRecyclerViewAdapter<Item, RecyclerView.Vie
         // Get the unique ID of the item.
         long swipedId = (long) ((ItemVH) swiped).content.getTag();
 
+        // Let the adapter know what's about to happen so that it doesn't need to diff everything.
+        expectRemoval(swiped.getAdapterPosition());
+
         // Remove the item from Realm.
         try (Realm realm = Realm.getDefaultInstance()) {
             Item item = realm.where(Item.class).equalTo("uniqueId", swipedId).findFirst();
@@ -104,6 +95,9 @@ public class ItemAdapter extends RealmRecyclerViewAdapter<Item, RecyclerView.Vie
         long draggingId = (long) ((ItemVH) dragging).content.getTag();
         long targetId = (long) ((ItemVH) target).content.getTag();
 
+        // Let the adapter know what's about to happen so that it doesn't need to diff everything.
+        expectMove(draggingPos, targetPos);
+
         // Move the item up or down. The methods in ItemDragHelper will calculate and
         // assign a new position value for the item whose uniqueId == draggingId.
         if (draggingPos > targetPos) ItemDragHelper.moveItemToBefore(draggingId, targetId);
@@ -114,7 +108,8 @@ public class ItemAdapter extends RealmRecyclerViewAdapter<Item, RecyclerView.Vie
 
     @Override
     public String getFastScrollBubbleText(int position) {
-        return String.valueOf(realmResults.get(position).name.charAt(0));
+        Item item = getItem(position);
+        return item != null ? String.valueOf(item.name.charAt(0)) : null;
     }
 
     class ItemVH extends RecyclerView.ViewHolder {